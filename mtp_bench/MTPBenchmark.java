@@ -0,0 +1,902 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmark suite for the per-packet hot path of the sender and receiver. Each benchmark runs
+ * in its own forked JVMs so one benchmark's JIT profile can't skew the next, and every fork runs
+ * warmup iterations before the measured ones. It reports the time per operation (mean and standard
+ * deviation over every measured iteration of every fork) next to the bytes allocated per operation,
+ * the allocation rate and the garbage collections while measuring, so hot path regressions show up
+ * in either. Inputs are read from fields rather than constants so the JIT can't fold them into the
+ * work, and every operation returns a result depending on all of its work, which is sunk into a
+ * volatile so the work can't be removed as dead code.
+ *
+ * Usage: java -cp <all module classes> MTPBenchmark [milliseconds per iteration] [forks, 0 runs in this JVM]
+ * @author Charbel Zeaiter
+ */
+public class MTPBenchmark {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    private static final int[] MSS_VALUES = {536, 1400};
+    private static final int[] WINDOW_VALUES = {16, 64};
+    private static final int[] LOG_CAPTURE_VALUES = {0, 64};
+    private static final int STREAM_FILE_BYTES = 1024*1024;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final int DEFAULT_ITERATION_MS = 200;
+    private static final int DEFAULT_FORKS = 3;
+    private static final int MAX_INT_NUMBER = 2147483647;
+    
+    // A forked JVM is started with this argument, the benchmark index and the iteration time, and
+    // prints one result line per measured iteration.
+    private static final String FORK_ARGUMENT = "--fork";
+    private static final String RESULT_PREFIX = "RESULT ";
+    
+    // Indexes of the figures measured for an iteration.
+    private static final int NANOS_PER_OP = 0;
+    private static final int BYTES_PER_OP = 1;
+    private static final int ALLOC_MB_PER_SECOND = 2;
+    private static final int GC_COUNT = 3;
+    private static final int GC_MILLIS = 4;
+    private static final int RESULT_FIGURES = 5;
+    
+    // Results are sunk here so the JIT can't remove the measured work.
+    private static volatile long sink;
+    
+    private com.sun.management.ThreadMXBean myThreadMXBean;
+    private int iterationMillis;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aIterationMillis Integer, How long each warmup and measured iteration runs for.
+     */
+    public MTPBenchmark(int aIterationMillis)
+    {
+        this.iterationMillis = aIterationMillis;
+        this.myThreadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        this.myThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if( (args.length == 3) && args[0].equals(FORK_ARGUMENT) )
+        {
+            // A forked JVM runs one benchmark and reports back to the parent.
+            new MTPBenchmark(Integer.parseInt(args[2])).runFork(Integer.parseInt(args[1]));
+            return;
+        }
+        
+        int iterationMillis = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_ITERATION_MS;
+        int forks = (args.length >= 2) ? Integer.parseInt(args[1]) : DEFAULT_FORKS;
+        
+        new MTPBenchmark(iterationMillis).runAll(forks);
+    }
+    
+    /**
+     * Runs every benchmark and prints a result line for each.
+     * @param aForks Integer, The number of JVMs each benchmark is forked into, 0 runs them all in this JVM.
+     */
+    public void runAll(int aForks) throws IOException, InterruptedException
+    {
+        System.out.println(String.format("%-22s %-16s %10s %9s %10s %11s %9s %7s", "Benchmark", "Params", "ns/op", "sd", "B/op", "MB/s alloc", "gc.count", "gc.ms"));
+        
+        List<Benchmark> benchmarks = this.createBenchmarks();
+        for(int i=0;i<benchmarks.size();i++)
+        {
+            List<double[]> results = new ArrayList<double[]>();
+            
+            if(aForks == 0)
+            {
+                results.addAll(this.runIterations(benchmarks.get(i)));
+            }
+            
+            for(int fork=0;fork<aForks;fork++)
+            {
+                results.addAll(this.fork(i));
+            }
+            
+            this.printResult(benchmarks.get(i), results);
+        }
+    }
+    
+    /**
+     * Runs one benchmark in this (forked) JVM and prints a result line for each measured iteration.
+     * @param aIndex Integer, The benchmarks index.
+     */
+    public void runFork(int aIndex) throws IOException
+    {
+        for(double[] result : this.runIterations(this.createBenchmarks().get(aIndex)))
+        {
+            StringBuilder line = new StringBuilder(RESULT_PREFIX);
+            for(int i=0;i<RESULT_FIGURES;i++)
+            {
+                line.append(result[i]).append(' ');
+            }
+            System.out.println(line.toString().trim());
+        }
+    }
+    
+    // Benchmarks ///////////////////////////////////////////////////
+    
+    /**
+     * Creates the list of benchmarks, in the order they run.
+     * @return List<Benchmark>
+     */
+    private List<Benchmark> createBenchmarks()
+    {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        
+        benchmarks.add(new Benchmark("header.encode", "") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.headerEncode();
+            }
+        });
+        benchmarks.add(new Benchmark("header.decode", "") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.headerDecode();
+            }
+        });
+        benchmarks.add(new Benchmark("seq.next", "no wrap") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.nextSeqNum(0);
+            }
+        });
+        benchmarks.add(new Benchmark("seq.next", "across wrap") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.nextSeqNum(MAX_INT_NUMBER-1400);
+            }
+        });
+        benchmarks.add(new Benchmark("seq.before", "across wrap") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.seqBefore(MAX_INT_NUMBER-1400);
+            }
+        });
+        
+        for(int mss : MSS_VALUES)
+        {
+            benchmarks.add(new SenderBenchmark("segment.send", "mss="+mss, mss) {
+                public Operation setUp(Sender aSender)
+                {
+                    return MTPBenchmark.this.segmentSend(aSender);
+                }
+            });
+        }
+        
+        for(int mss : MSS_VALUES)
+        {
+            benchmarks.add(new SenderBenchmark("segment.stream", "mss="+mss+" 1MiB", mss) {
+                public Operation setUp(Sender aSender)
+                {
+                    return MTPBenchmark.this.segmentStream(aSender);
+                }
+            });
+        }
+        
+        benchmarks.add(new Benchmark("timer.rearmCancel", "") {
+            public Operation setUp()
+            {
+                return MTPBenchmark.this.timerRearm();
+            }
+        });
+        
+        for(final int window : WINDOW_VALUES)
+        {
+            benchmarks.add(new Benchmark("window.addLookupAck", "win="+window) {
+                public Operation setUp()
+                {
+                    return MTPBenchmark.this.sendWindow(window);
+                }
+            });
+        }
+        
+        for(final int mss : MSS_VALUES)
+        {
+            for(final int window : WINDOW_VALUES)
+            {
+                benchmarks.add(new Benchmark("reorder.insertDrain", "mss="+mss+" win="+window) {
+                    public Operation setUp()
+                    {
+                        return MTPBenchmark.this.reorderBuffer(mss, window);
+                    }
+                });
+            }
+        }
+        
+        for(final int capture : LOG_CAPTURE_VALUES)
+        {
+            benchmarks.add(new Benchmark("eventLog.logData", "capture="+capture) {
+                private File logFile;
+                private EventLog myEventLog;
+                
+                public Operation setUp() throws IOException
+                {
+                    this.logFile = File.createTempFile("mtp_bench_log", ".bin");
+                    this.myEventLog = new EventLog(this.logFile.getPath(), capture);
+                    return MTPBenchmark.this.eventLog(this.myEventLog);
+                }
+                
+                public void tearDown()
+                {
+                    this.myEventLog.close();
+                    this.logFile.delete();
+                }
+            });
+        }
+        
+        return benchmarks;
+    }
+    
+    /**
+     * Writes every field of a data segment header.
+     * @return Operation
+     */
+    private Operation headerEncode()
+    {
+        final MTPHeader header = new MTPHeader();
+        
+        return new Operation() {
+            private int destPort = 40000;
+            private int srcPort = 50001;
+            private int mss = 1400;
+            private int mws = 64;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    header.clear();
+                    header.setDestPort(this.destPort);
+                    header.setSRCPort(this.srcPort);
+                    header.setSequenceNumber(i);
+                    header.setAckNumber(i+1);
+                    header.setMSS(this.mss);
+                    header.setMWS(this.mws);
+                    header.setPayloadByteLength(this.mss);
+                    result += header.getByteBuffer().get(10);
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Reads every field of a received header through a header view.
+     * @return Operation
+     */
+    private Operation headerDecode()
+    {
+        // A handful of different received headers so the reads can't be hoisted out of the loop.
+        final ByteBuffer[] received = new ByteBuffer[8];
+        for(int i=0;i<received.length;i++)
+        {
+            MTPHeader encoded = new MTPHeader();
+            encoded.setACK();
+            encoded.setDestPort(50001);
+            encoded.setSRCPort(40000+i);
+            encoded.setSequenceNumber(123456789+i*1400);
+            encoded.setAckNumber(987654321+i);
+            encoded.setMSS(1400);
+            encoded.setMWS(64);
+            received[i] = encoded.getByteBuffer();
+        }
+        
+        final MTPHeader view = new MTPHeader();
+        
+        return new Operation() {
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    MTPHeader header = view.wrap(received[i & 7]);
+                    result += (header.getSYN() ? 1 : 0) + (header.getACK() ? 1 : 0) + header.getDestPort() + header.getSRCPort()
+                              + header.getSequenceNumber() + header.getAckNumber() + header.getMSS() + header.getMWS()
+                              + header.getPayloadByteLength();
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Advances a sequence number by one segment.
+     * @param aStartSeqNum Integer, The sequence number every operation starts from.
+     * @return Operation
+     */
+    private Operation nextSeqNum(final int aStartSeqNum)
+    {
+        final MTPCalculation calculation = new MTPCalculation(1, MAX_INT_NUMBER);
+        
+        return new Operation() {
+            private int startSeqNum = aStartSeqNum;
+            private int segmentSize = 1400;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    result += calculation.getNextSeqNum(this.startSeqNum+(i & 63), this.segmentSize);
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Compares a sequence number with the one a segment ahead of it.
+     * @param aStartSeqNum Integer, The sequence number every operation starts from.
+     * @return Operation
+     */
+    private Operation seqBefore(final int aStartSeqNum)
+    {
+        final MTPCalculation calculation = new MTPCalculation(1, MAX_INT_NUMBER);
+        
+        return new Operation() {
+            private int startSeqNum = aStartSeqNum;
+            private int segmentSize = 1400;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    int seqNum = this.startSeqNum+(i & 63);
+                    if(calculation.isSeqBefore(seqNum, calculation.getNextSeqNum(seqNum, this.segmentSize)))
+                    {
+                        result++;
+                    }
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Sends a data segment (a header and a slice of the mapped file) through the senders channel.
+     * @param aSender Sender, A sender set up with the file and segment size to use.
+     * @return Operation
+     */
+    private Operation segmentSend(final Sender aSender)
+    {
+        final Sender sender = aSender;
+        final MTPHeader header = new MTPHeader();
+        final ByteBuffer payLoad = new SegmentStream(aSender, 0).getNextSegment().getDataSegment();
+        header.setPayloadByteLength(payLoad.remaining());
+        
+        return new Operation() {
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    header.setSequenceNumber(i);
+                    sender.sendMTPSegment(header, payLoad, false);
+                    result += payLoad.position();
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Opens a file as the senders segment stream and pulls every segment from it (one operation
+     * is the whole file).
+     * @param aSender Sender, A sender set up with the file and segment size to use.
+     * @return Operation
+     */
+    private Operation segmentStream(final Sender aSender)
+    {
+        final Sender sender = aSender;
+        
+        return new Operation() {
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    SegmentStream newSegmentStream = new SegmentStream(sender, 0);
+                    Triple segment = newSegmentStream.getNextSegment();
+                    while(segment != null)
+                    {
+                        result += segment.getDataLength();
+                        segment = newSegmentStream.getNextSegment();
+                    }
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Re-arms the retransmission timer the way every new ack does, and cancels it.
+     * @return Operation
+     */
+    private Operation timerRearm()
+    {
+        final MTPTimer timer = new MTPTimer(new Runnable() {
+            public void run()
+            {
+            }
+        });
+        
+        return new Operation() {
+            private long timeoutMillis = 60000;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    timer.arm(this.timeoutMillis);
+                    if((i & 1) == 0)
+                    {
+                        timer.cancel();
+                    }
+                    result += timer.isArmed() ? 1 : 0;
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Puts a window of segments in flight across the wrap point, looks each one up the way fast
+     * retransmit does and acks them one at a time (one operation is one segment).
+     * @param aWindow Integer, The number of segments in the window.
+     * @return Operation
+     */
+    private Operation sendWindow(final int aWindow)
+    {
+        final MTPCalculation calculation = new MTPCalculation(1, MAX_INT_NUMBER);
+        final SendWindow window = new SendWindow(calculation, 1400, aWindow);
+        final Triple[] segments = new Triple[aWindow];
+        int seqNum = MAX_INT_NUMBER-(aWindow/2)*1400;
+        for(int i=0;i<aWindow;i++)
+        {
+            segments[i] = new Triple(seqNum, null);
+            seqNum = calculation.getNextSeqNum(seqNum, 1400);
+        }
+        final int endSeqNum = seqNum;
+        
+        return new Operation() {
+            private int windowSegments = aWindow;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int done=0;done<aOps;done+=this.windowSegments)
+                {
+                    for(int i=0;i<this.windowSegments;i++)
+                    {
+                        window.add(segments[i]);
+                    }
+                    
+                    for(int i=1;i<this.windowSegments;i++)
+                    {
+                        int seqNum = segments[i].getSequenceNumber();
+                        result += window.get(seqNum).getSequenceNumber();
+                        result += window.advance(seqNum).getSequenceNumber();
+                    }
+                    result += window.advance(endSeqNum).getSequenceNumber();
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Fills the receivers out of order buffer with a window of segments arriving in reverse and
+     * drains it in order the way the receivers send algorithm does (one operation is one segment).
+     * @param aMSS Integer, The segment size.
+     * @param aWindow Integer, The number of segments in the window.
+     * @return Operation
+     */
+    private Operation reorderBuffer(final int aMSS, final int aWindow)
+    {
+        final ReorderBuffer receiveBuffer = new ReorderBuffer(aMSS, aMSS*aWindow);
+        
+        return new Operation() {
+            private int mss = aMSS;
+            private int windowSegments = aWindow;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int done=0;done<aOps;done+=this.windowSegments)
+                {
+                    // Every segment but the first arrives out of order.
+                    for(int i=this.windowSegments-1;i>=1;i--)
+                    {
+                        receiveBuffer.add(0, i*this.mss, this.mss);
+                    }
+                    
+                    // Gap filled, drain in order.
+                    result += receiveBuffer.drain(this.mss);
+                }
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * Logs a received data segment, as the receive threads do for every segment. Events logged
+     * while the writer thread is behind are dropped, which is counted in the time per operation.
+     * @param aEventLog EventLog, The log, written to a temporary file.
+     * @return Operation
+     */
+    private Operation eventLog(final EventLog aEventLog)
+    {
+        final MTPHeader header = new MTPHeader();
+        header.setDestPort(40000);
+        header.setSRCPort(50001);
+        header.setPayloadByteLength(1400);
+        final ByteBuffer payLoad = ByteBuffer.allocateDirect(1400);
+        
+        return new Operation() {
+            private int event = EventLog.RECEIVER_RECEIVED_SEGMENT;
+            
+            public long run(int aOps)
+            {
+                long result = 0;
+                for(int i=0;i<aOps;i++)
+                {
+                    header.setSequenceNumber(i);
+                    aEventLog.logData(this.event, header, payLoad);
+                    result += header.getByteBuffer().get(4);
+                }
+                return result;
+            }
+        };
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Sets a benchmark up, runs its warmup and measured iterations and tears it down.
+     * @param aBenchmark Benchmark, The benchmark.
+     * @return List<double[]>, The figures measured for each measured iteration.
+     */
+    private List<double[]> runIterations(Benchmark aBenchmark) throws IOException
+    {
+        List<double[]> results = new ArrayList<double[]>();
+        Operation operation = aBenchmark.setUp();
+        
+        try
+        {
+            // Size a batch to roughly a millisecond while warming up.
+            int batch = 1;
+            long warmupEnd = System.nanoTime()+WARMUP_ITERATIONS*this.iterationMillis*1000000L;
+            while(System.nanoTime() < warmupEnd)
+            {
+                long start = System.nanoTime();
+                sink += operation.run(batch);
+                if( (System.nanoTime()-start < 1000000L) && (batch < (1 << 30)) )
+                {
+                    batch = batch*2;
+                }
+            }
+            
+            for(int i=0;i<MEASURE_ITERATIONS;i++)
+            {
+                results.add(this.measureIteration(operation, batch));
+            }
+            
+        } finally {
+            aBenchmark.tearDown();
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Measures one iteration of a benchmark.
+     * @param aOperation Operation, The benchmark.
+     * @param aBatch Integer, The number of operations run between reading the clock.
+     * @return double[], The iterations figures, indexed by NANOS_PER_OP to GC_MILLIS.
+     */
+    private double[] measureIteration(Operation aOperation, int aBatch)
+    {
+        long threadId = Thread.currentThread().getId();
+        long ops = 0;
+        long startGCCount = this.getGCCount();
+        long startGCMillis = this.getGCMillis();
+        long startBytes = this.myThreadMXBean.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        long endTime = startTime+this.iterationMillis*1000000L;
+        long now = startTime;
+        
+        while(now < endTime)
+        {
+            sink += aOperation.run(aBatch);
+            ops += aBatch;
+            now = System.nanoTime();
+        }
+        
+        long allocatedBytes = this.myThreadMXBean.getThreadAllocatedBytes(threadId)-startBytes;
+        long elapsedNanos = now-startTime;
+        
+        double[] result = new double[RESULT_FIGURES];
+        result[NANOS_PER_OP] = (double)elapsedNanos/ops;
+        result[BYTES_PER_OP] = (double)allocatedBytes/ops;
+        result[ALLOC_MB_PER_SECOND] = (allocatedBytes/(1024.0*1024.0))/(elapsedNanos/1e9);
+        result[GC_COUNT] = this.getGCCount()-startGCCount;
+        result[GC_MILLIS] = this.getGCMillis()-startGCMillis;
+        
+        return result;
+    }
+    
+    /**
+     * Runs one benchmark in a new JVM, with the same JVM options and class path as this one.
+     * @param aIndex Integer, The benchmarks index.
+     * @return List<double[]>, The figures the fork measured for each measured iteration.
+     */
+    private List<double[]> fork(int aIndex) throws IOException, InterruptedException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MTPBenchmark.class.getName());
+        command.add(FORK_ARGUMENT);
+        command.add(Integer.toString(aIndex));
+        command.add(Integer.toString(this.iterationMillis));
+        
+        Process forkProcess = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        
+        List<double[]> results = new ArrayList<double[]>();
+        BufferedReader forkOutput = new BufferedReader(new InputStreamReader(forkProcess.getInputStream(), "UTF-8"));
+        try
+        {
+            String line = forkOutput.readLine();
+            while(line != null)
+            {
+                if(line.startsWith(RESULT_PREFIX))
+                {
+                    String[] figures = line.substring(RESULT_PREFIX.length()).split(" ");
+                    double[] result = new double[RESULT_FIGURES];
+                    for(int i=0;i<RESULT_FIGURES;i++)
+                    {
+                        result[i] = Double.parseDouble(figures[i]);
+                    }
+                    results.add(result);
+                }
+                line = forkOutput.readLine();
+            }
+        } finally {
+            forkOutput.close();
+        }
+        
+        if( (forkProcess.waitFor() != 0) || (results.size() != MEASURE_ITERATIONS) )
+        {
+            throw new IOException("Forked benchmark "+aIndex+" failed");
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Prints a benchmarks result line: the mean and standard deviation of the time per operation,
+     * the mean allocation figures and the garbage collections over every measured iteration.
+     * @param aBenchmark Benchmark, The benchmark.
+     * @param aResults List<double[]>, The figures measured for each measured iteration.
+     */
+    private void printResult(Benchmark aBenchmark, List<double[]> aResults)
+    {
+        double[] sums = new double[RESULT_FIGURES];
+        for(double[] result : aResults)
+        {
+            for(int i=0;i<RESULT_FIGURES;i++)
+            {
+                sums[i] += result[i];
+            }
+        }
+        
+        int count = aResults.size();
+        double meanNanosPerOp = sums[NANOS_PER_OP]/count;
+        double squaredDeviations = 0;
+        for(double[] result : aResults)
+        {
+            squaredDeviations += (result[NANOS_PER_OP]-meanNanosPerOp)*(result[NANOS_PER_OP]-meanNanosPerOp);
+        }
+        double deviation = (count > 1) ? Math.sqrt(squaredDeviations/(count-1)) : 0;
+        
+        System.out.println(String.format("%-22s %-16s %10.1f %9.1f %10.1f %11.1f %9d %7d", aBenchmark.getName(), aBenchmark.getParams(),
+                                         meanNanosPerOp, deviation, sums[BYTES_PER_OP]/count, sums[ALLOC_MB_PER_SECOND]/count,
+                                         (long)sums[GC_COUNT], (long)sums[GC_MILLIS]));
+    }
+    
+    /**
+     * Gets the number of garbage collections so far, of every collector.
+     * @return Long
+     */
+    private long getGCCount()
+    {
+        long count = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the time spent in garbage collection so far, by every collector.
+     * @return Long, In milliseconds.
+     */
+    private long getGCMillis()
+    {
+        long millis = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+    
+    /**
+     * Creates a temporary file of random bytes for the segmentation benchmark.
+     * @return File
+     */
+    private File createStreamFile() throws IOException
+    {
+        File newFile = File.createTempFile("mtp_bench", ".bin");
+        byte[] bytes = new byte[STREAM_FILE_BYTES];
+        new Random(1).nextBytes(bytes);
+        
+        FileOutputStream newOutputStream = new FileOutputStream(newFile);
+        try
+        {
+            newOutputStream.write(bytes);
+        } finally {
+            newOutputStream.close();
+        }
+        
+        return newFile;
+    }
+    
+    /**
+     * A benchmarked piece of work.
+     */
+    private abstract static class Operation {
+        
+        /**
+         * Performs the work a number of times.
+         * @param aOps Integer, The number of operations to perform.
+         * @return Long, A value depending on all the work done.
+         */
+        public abstract long run(int aOps);
+    }
+    
+    /**
+     * A named benchmark, set up before it runs and torn down after.
+     */
+    private abstract static class Benchmark {
+        
+        private String name;
+        private String params;
+        
+        /**
+         * Class Constructor.
+         * @param aName String, The benchmark name.
+         * @param aParams String, The benchmark parameters.
+         */
+        public Benchmark(String aName, String aParams)
+        {
+            this.name = aName;
+            this.params = aParams;
+        }
+        
+        /**
+         * Sets up what the benchmark needs.
+         * @return Operation, The work measured.
+         */
+        public abstract Operation setUp() throws IOException;
+        
+        /**
+         * Releases what the benchmark set up.
+         */
+        public void tearDown() throws IOException
+        {
+        }
+        
+        /**
+         * Gets the benchmark name.
+         * @return String
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+        
+        /**
+         * Gets the benchmark parameters.
+         * @return String
+         */
+        public String getParams()
+        {
+            return this.params;
+        }
+    }
+    
+    /**
+     * A benchmark of a sender streaming a temporary file to a local channel that never reads its
+     * segments (the kernel drops them). The senders event log goes to a temporary file, not the
+     * working directory.
+     */
+    private abstract class SenderBenchmark extends Benchmark {
+        
+        private int mss;
+        private File streamFile;
+        private File logFile;
+        private DatagramChannel sinkChannel;
+        private Sender mySender;
+        
+        /**
+         * Class Constructor.
+         * @param aName String, The benchmark name.
+         * @param aParams String, The benchmark parameters.
+         * @param aMSS Integer, The senders maximum segment size.
+         */
+        public SenderBenchmark(String aName, String aParams, int aMSS)
+        {
+            super(aName, aParams);
+            this.mss = aMSS;
+        }
+        
+        /**
+         * Sets up the work measured with the sender.
+         * @param aSender Sender, A sender set up with the file and segment size to use.
+         * @return Operation, The work measured.
+         */
+        public abstract Operation setUp(Sender aSender);
+        
+        public Operation setUp() throws IOException
+        {
+            this.streamFile = MTPBenchmark.this.createStreamFile();
+            this.logFile = File.createTempFile("mtp_bench_log", ".bin");
+            
+            this.sinkChannel = DatagramChannel.open();
+            this.sinkChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+            int sinkPort = ((InetSocketAddress)this.sinkChannel.getLocalAddress()).getPort();
+            
+            this.mySender = new Sender("127.0.0.1", sinkPort, this.streamFile.getPath(), 64, this.mss, 1000, 0, 1,
+                                       Sender.RENO, Sender.PACING_OFF, EventLog.NO_PAYLOAD_CAPTURE, this.logFile.getPath());
+            
+            return this.setUp(this.mySender);
+        }
+        
+        public void tearDown() throws IOException
+        {
+            this.mySender.closeChannel();
+            this.mySender.myEventLog.close();
+            this.sinkChannel.close();
+            this.logFile.delete();
+            this.streamFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This Class is a pool of reusable direct buffers for received segments, so receiving allocates
+ * nothing once the pool has warmed up. A direct buffer is read into by the channel without a copy
+ * and can be written to a file the same way. Every buffer taken is given back once its segment has
+ * been handled (its payload written or dropped) and its contents mustn't be used after that.
+ * @author Charbel Zeaiter
+ */
+public class BufferPool {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    private int bufferByteSize;
+    private ByteBuffer[] freeBuffers;
+    private int freeCount;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor, the pool starts empty and fills as buffers are given back.
+     * @param aBufferByteSize Integer, The capacity of every buffer.
+     * @param aMaxFreeBuffers Integer, The most buffers kept for reuse, any more given back are dropped.
+     */
+    public BufferPool(int aBufferByteSize, int aMaxFreeBuffers)
+    {
+        this.bufferByteSize = aBufferByteSize;
+        this.freeBuffers = new ByteBuffer[Math.max(1, aMaxFreeBuffers)];
+        this.freeCount = 0;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Takes a cleared buffer from the pool, or a new one if none are free.
+     * @return ByteBuffer
+     */
+    public synchronized ByteBuffer acquire()
+    {
+        if(this.freeCount == 0)
+        {
+            return ByteBuffer.allocateDirect(this.bufferByteSize);
+        }
+        
+        this.freeCount--;
+        ByteBuffer freeBuffer = this.freeBuffers[this.freeCount];
+        this.freeBuffers[this.freeCount] = null;
+        freeBuffer.clear();
+        
+        return freeBuffer;
+    }
+    
+    /**
+     * Gives a buffer back to the pool. Buffers of another size (or null) are dropped.
+     * @param aByteBuffer ByteBuffer, A buffer taken from the pool.
+     */
+    public synchronized void release(ByteBuffer aByteBuffer)
+    {
+        if( (aByteBuffer == null) || (aByteBuffer.capacity() != this.bufferByteSize) 
+            || (this.freeCount == this.freeBuffers.length) )
+        {
+            return;
+        }
+        
+        this.freeBuffers[this.freeCount] = aByteBuffer;
+        this.freeCount++;
+    }
+
+}
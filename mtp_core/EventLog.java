@@ -0,0 +1,455 @@
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This Class is the binary event log of the sender and receiver. An event is a fixed size record
+ * (its code, time and an event specific value, the raw header bytes of its segment and a copy of
+ * the first payload bytes) that the thread it happens on copies into a lock free ring. A background
+ * thread writes the ring to the log file in batches, so logging an event never takes a lock, waits
+ * on the disk or decodes a header. If the writer falls behind and the ring is full new events are
+ * dropped and counted, the packet path is never held up. EventLogDecoder turns a log file back into
+ * the text log.
+ *
+ * File layout: a header of MAGIC, VERSION and the record size (4 bytes each, most significant
+ * first) followed by the records in the order their events claimed a place in the ring.
+ * @author Charbel Zeaiter
+ */
+public class EventLog {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    public static final int MAGIC = 0x4D54504C;
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_BYTE_SIZE = 12;
+    
+    // Event codes, the decoder holds the text each one is written as.
+    public static final int ENTERING_HANDSHAKE = 1;
+    public static final int SENDER_SENT_SYN = 2;
+    public static final int SENDER_RECEIVED_SYN_ACK = 3;
+    public static final int SENDER_SENT_HANDSHAKE_ACK = 4;
+    public static final int SENDER_STARTING_TRANSFER = 5;
+    public static final int SENDER_SENT_SEGMENT = 6;
+    public static final int SENDER_TIMEOUT = 7;
+    public static final int SENDER_FAST_RETRANSMIT = 8;
+    public static final int SENDER_PARTIAL_ACK_RETRANSMIT = 9;
+    public static final int SENDER_RACK_RETRANSMIT = 10;
+    public static final int SENDER_TAIL_LOSS_PROBE = 11;
+    public static final int SENDER_RECEIVED_ACK = 12;
+    public static final int SENDER_RECEIVED_DUPLICATE_ACK = 13;
+    public static final int SENDER_PLD_DROPPED = 14;
+    public static final int SENDER_PLD_SENT = 15;
+    public static final int SENDER_TRANSFER_COMPLETE = 16;
+    public static final int RECEIVER_RECEIVED_SYN = 17;
+    public static final int RECEIVER_SENT_SYN_ACK = 18;
+    public static final int RECEIVER_RECEIVED_HANDSHAKE_ACK = 19;
+    public static final int RECEIVER_READY = 20;
+    public static final int RECEIVER_RECEIVED_SEGMENT = 21;
+    public static final int RECEIVER_SENT_ACK = 22;
+    public static final int RECEIVER_SENT_UNEXPECTED_ACK = 23;
+    public static final int RECEIVER_SENT_DRAINED_ACK = 24;
+    public static final int RECEIVER_SENT_DELAYED_ACK = 25;
+    public static final int EVENTS_DROPPED = 26;
+    
+    // Record layout, the payload copy fills the rest of the record.
+    public static final int EVENT_INDEX = 0;
+    public static final int HAS_HEADER_INDEX = 1;
+    public static final int PAYLOAD_LENGTH_INDEX = 2;
+    public static final int VALUE_INDEX = 4;
+    public static final int TIME_INDEX = 8;
+    public static final int HEADER_INDEX = 16;
+    public static final int PAYLOAD_INDEX = 40;
+    
+    // Handshake options and SACK blocks are always copied whole, data only up to the capture size.
+    public static final int MAX_OPTIONS_BYTE_SIZE = Math.max(MTPSack.MAX_BYTE_SIZE, MTPHeader.SYN_OPTIONS_BYTE_SIZE);
+    public static final int MAX_CAPTURE_BYTE_SIZE = 65535;
+    public static final int NO_PAYLOAD_CAPTURE = 0;
+    
+    // The ring holds this many records, fewer if they are large.
+    private static final int MAX_RING_RECORDS = 1 << 13;
+    private static final int MIN_RING_RECORDS = 1 << 8;
+    private static final int MAX_RING_BYTE_SIZE = 1 << 24;
+    
+    // How long the writer sleeps when it finds nothing to write.
+    private static final long WRITER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long CLOSE_WAIT_MILLIS = 1000;
+    
+    private final int CAPTURE_BYTE_SIZE;
+    private final int RECORD_BYTE_SIZE;
+    private final int RING_RECORDS;
+    private final int RING_MASK;
+    
+    private long startingSystemTime;
+    private ByteBuffer myRing;
+    private AtomicLongArray publishedSequences;
+    private AtomicLong nextSequence;
+    private AtomicLong droppedEvents;
+    private volatile long writtenSequence;
+    private volatile boolean closed;
+    private FileChannel myFileChannel;
+    private Thread writerThread;
+    private Thread shutdownHook;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor, creates the log file and starts the writer thread. Events still in the ring
+     * are written out when the program exits. Without a file (none given, or it can't be created)
+     * the log records nothing and no writer is started.
+     * @param aFilename String, The log file to create, or null.
+     * @param aCaptureByteSize Integer, The most payload bytes copied per data segment, 0 copies none.
+     */
+    public EventLog(String aFilename, int aCaptureByteSize)
+    {
+        this.CAPTURE_BYTE_SIZE = Math.max(0, Math.min(MAX_CAPTURE_BYTE_SIZE, aCaptureByteSize));
+        
+        // Records are a multiple of 8 bytes so the time field is always aligned.
+        int payLoadByteSize = Math.max(MAX_OPTIONS_BYTE_SIZE, this.CAPTURE_BYTE_SIZE);
+        this.RECORD_BYTE_SIZE = ((PAYLOAD_INDEX+payLoadByteSize+7)/8)*8;
+        
+        // Ring size is a power of two so slots wrap with a mask.
+        int ringRecords = MAX_RING_RECORDS;
+        while( (ringRecords > MIN_RING_RECORDS) && ((long)ringRecords*this.RECORD_BYTE_SIZE > MAX_RING_BYTE_SIZE) )
+        {
+            ringRecords = ringRecords/2;
+        }
+        this.RING_RECORDS = ringRecords;
+        this.RING_MASK = ringRecords-1;
+        
+        this.nextSequence = new AtomicLong(0);
+        this.droppedEvents = new AtomicLong(0);
+        this.writtenSequence = 0;
+        this.closed = false;
+        
+        this.startingSystemTime = System.currentTimeMillis();
+        
+        // Without a file the log stays closed, every event is dropped before it touches the ring.
+        this.myFileChannel = this.createFile(aFilename);
+        if(this.myFileChannel == null)
+        {
+            this.closed = true;
+            return;
+        }
+        
+        // The ring is direct so the writer hands it to the file channel without a copy.
+        this.myRing = ByteBuffer.allocateDirect(this.RING_RECORDS*this.RECORD_BYTE_SIZE);
+        this.publishedSequences = new AtomicLongArray(this.RING_RECORDS);
+        for(int i=0;i<this.RING_RECORDS;i++)
+        {
+            this.publishedSequences.set(i, -1);
+        }
+        
+        this.writerThread = new Thread(new Runnable() {
+            public void run()
+            {
+                EventLog.this.write();
+            }
+        }, "mtp-event-log");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        
+        // Flush what is left in the ring however the program exits.
+        this.shutdownHook = new Thread(new Runnable() {
+            public void run()
+            {
+                EventLog.this.close();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Logs an event that has no segment.
+     * @param aEvent Integer, The event code.
+     */
+    public void log(int aEvent)
+    {
+        this.put(aEvent, 0, null, null, 0);
+    }
+    
+    /**
+     * Logs an event that has no segment.
+     * @param aEvent Integer, The event code.
+     * @param aValue Integer, An event specific value.
+     */
+    public void log(int aEvent, int aValue)
+    {
+        this.put(aEvent, aValue, null, null, 0);
+    }
+    
+    /**
+     * Logs a segment carrying handshake options or SACK blocks, which are copied whole.
+     * @param aEvent Integer, The event code.
+     * @param aValue Integer, An event specific value.
+     * @param aHeader MTPHeader, The segments header, its raw bytes are copied.
+     * @param aOptions ByteBuffer, The segments payload (between position and limit), or null.
+     */
+    public void logSegment(int aEvent, int aValue, MTPHeader aHeader, ByteBuffer aOptions)
+    {
+        this.put(aEvent, aValue, aHeader, aOptions, MAX_OPTIONS_BYTE_SIZE);
+    }
+    
+    /**
+     * Logs a data segment, only its first payload bytes (up to the capture size) are copied.
+     * @param aEvent Integer, The event code.
+     * @param aHeader MTPHeader, The segments header, its raw bytes are copied.
+     * @param aPayLoad ByteBuffer, The segments payload (between position and limit), or null.
+     */
+    public void logData(int aEvent, MTPHeader aHeader, ByteBuffer aPayLoad)
+    {
+        this.put(aEvent, 0, aHeader, aPayLoad, this.CAPTURE_BYTE_SIZE);
+    }
+    
+    /**
+     * Stops the writer once it has written every event that claimed a record before the close
+     * (waiting at most CLOSE_WAIT_MILLIS for events still being copied in) and closes the log file.
+     * Events logged after this are dropped.
+     */
+    public void close()
+    {
+        this.closed = true;
+        
+        // A log without a file has no writer to stop.
+        if(this.writerThread == null)
+        {
+            return;
+        }
+        
+        LockSupport.unpark(this.writerThread);
+        
+        // A log closed before exit no longer needs its shutdown hook.
+        try
+        {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        }
+        catch (IllegalStateException e)
+        {
+            // The program is already exiting, this may be the hook.
+        }
+        
+        try
+        {
+            this.writerThread.join(CLOSE_WAIT_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Creates the log file and writes its header.
+     * @param aFilename String, The log file to create, or null.
+     * @return FileChannel, The open file, or null if there is none.
+     */
+    private FileChannel createFile(String aFilename)
+    {
+        if(aFilename == null)
+        {
+            return null;
+        }
+        
+        FileChannel newFileChannel = null;
+        try
+        {
+            newFileChannel = new FileOutputStream(aFilename).getChannel();
+            
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTE_SIZE);
+            fileHeader.putInt(MAGIC);
+            fileHeader.putInt(VERSION);
+            fileHeader.putInt(this.RECORD_BYTE_SIZE);
+            fileHeader.flip();
+            
+            while(fileHeader.hasRemaining())
+            {
+                newFileChannel.write(fileHeader);
+            }
+            
+            return newFileChannel;
+        }
+        catch (FileNotFoundException e)
+        {
+            e.printStackTrace();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            
+            try
+            {
+                newFileChannel.close();
+            }
+            catch (IOException closeException)
+            {
+                closeException.printStackTrace();
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Claims the next record in the ring, fills it and publishes it to the writer.
+     * @param aEvent Integer, The event code.
+     * @param aValue Integer, An event specific value.
+     * @param aHeader MTPHeader, The segments header, or null.
+     * @param aPayLoad ByteBuffer, The segments payload, or null.
+     * @param aMaxPayLoadBytes Integer, The most payload bytes copied.
+     */
+    private void put(int aEvent, int aValue, MTPHeader aHeader, ByteBuffer aPayLoad, int aMaxPayLoadBytes)
+    {
+        // Claim a sequence, unless the ring is full of records not yet written.
+        long sequence;
+        do
+        {
+            sequence = this.nextSequence.get();
+            
+            if( this.closed || (sequence-this.writtenSequence >= this.RING_RECORDS) )
+            {
+                this.droppedEvents.incrementAndGet();
+                return;
+            }
+        } while(!this.nextSequence.compareAndSet(sequence, sequence+1));
+        
+        // The claimed record is only written by this thread until it is published.
+        int slot = (int)(sequence & this.RING_MASK);
+        int recordIndex = slot*this.RECORD_BYTE_SIZE;
+        ByteBuffer ring = this.myRing;
+        
+        ring.put(recordIndex+EVENT_INDEX, (byte)aEvent);
+        ring.putInt(recordIndex+VALUE_INDEX, aValue);
+        ring.putLong(recordIndex+TIME_INDEX, System.currentTimeMillis()-this.startingSystemTime);
+        
+        // Copy the headers raw bytes, they are decoded offline.
+        if(aHeader != null)
+        {
+            ByteBuffer headerBuffer = aHeader.getByteBuffer();
+            ring.put(recordIndex+HAS_HEADER_INDEX, (byte)1);
+            
+            for(int i=0;i<MTPHeader.HEADER_BYTE_SIZE;i++)
+            {
+                ring.put(recordIndex+HEADER_INDEX+i, headerBuffer.get(i));
+            }
+        }
+        else
+        {
+            ring.put(recordIndex+HAS_HEADER_INDEX, (byte)0);
+        }
+        
+        // Copy the first payload bytes.
+        int payLoadLength = 0;
+        if(aPayLoad != null)
+        {
+            payLoadLength = Math.min(aMaxPayLoadBytes, aPayLoad.remaining());
+            int payLoadPosition = aPayLoad.position();
+            
+            for(int i=0;i<payLoadLength;i++)
+            {
+                ring.put(recordIndex+PAYLOAD_INDEX+i, aPayLoad.get(payLoadPosition+i));
+            }
+        }
+        ring.putShort(recordIndex+PAYLOAD_LENGTH_INDEX, (short)payLoadLength);
+        
+        // Publish the record, the writer reads it after seeing its sequence.
+        this.publishedSequences.set(slot, sequence);
+    }
+    
+    /**
+     * The writer thread, writes published records to the file in ring order until the log is
+     * closed and every record claimed has been written, or the close deadline has passed.
+     */
+    private void write()
+    {
+        long reportedDropped = 0;
+        long closeDeadlineNanos = 0;
+        ByteBuffer ringView = this.myRing.duplicate();
+        
+        while(true)
+        {
+            boolean wasClosed = this.closed;
+            if( wasClosed && (closeDeadlineNanos == 0) )
+            {
+                closeDeadlineNanos = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MILLIS);
+            }
+            
+            // Count the published records from the next to write up to the end of the ring.
+            long sequence = this.writtenSequence;
+            int firstSlot = (int)(sequence & this.RING_MASK);
+            int count = 0;
+            while( (firstSlot+count < this.RING_RECORDS) && (this.publishedSequences.get(firstSlot+count) == sequence+count) )
+            {
+                count++;
+            }
+            
+            if(count > 0)
+            {
+                // Write the records with one write, straight from the ring.
+                ringView.limit((firstSlot+count)*this.RECORD_BYTE_SIZE);
+                ringView.position(firstSlot*this.RECORD_BYTE_SIZE);
+                
+                try
+                {
+                    while(ringView.hasRemaining())
+                    {
+                        this.myFileChannel.write(ringView);
+                    }
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                    break;
+                }
+                
+                // Free the records for reuse.
+                this.writtenSequence = sequence+count;
+                continue;
+            }
+            
+            // Note any events dropped while the ring was full.
+            long dropped = this.droppedEvents.get();
+            if( (dropped > reportedDropped) && (!wasClosed) )
+            {
+                this.log(EVENTS_DROPPED, (int)Math.min(Integer.MAX_VALUE, dropped-reportedDropped));
+                reportedDropped = dropped;
+                continue;
+            }
+            
+            if(wasClosed)
+            {
+                // Stop once every claimed record is written, sealing the sequence so a thread that
+                // saw the log open can't claim a record after this. A record claimed just before
+                // the close may still be being copied in.
+                long written = this.writtenSequence;
+                if( this.nextSequence.compareAndSet(written, Long.MAX_VALUE) || (System.nanoTime()-closeDeadlineNanos >= 0) )
+                {
+                    break;
+                }
+                
+                Thread.onSpinWait();
+                continue;
+            }
+            
+            LockSupport.parkNanos(WRITER_IDLE_NANOS);
+        }
+        
+        try
+        {
+            this.myFileChannel.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * This Class turns a binary event log written by EventLog back into the text log the sender and
+ * receiver used to write as they ran, offline. Used as a program launch class (with main):
+ * EventLogDecoder <log file> [text file], the text goes to standard output if no file is given.
+ * @author Charbel Zeaiter
+ */
+public class EventLogDecoder {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    private MTPHeader myMTPHeader;
+    private MTPSack mySack;
+    private boolean firstEvent;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     */
+    public EventLogDecoder()
+    {
+        this.myMTPHeader = new MTPHeader();
+        this.mySack = new MTPSack();
+        this.firstEvent = true;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    public static void main(String[] args)
+    {
+        if( (args.length >= 1) && (args.length <= 2) )
+        {
+            try
+            {
+                DataInputStream logInput = new DataInputStream(new FileInputStream(args[0]));
+                PrintWriter textWriter = (args.length == 2) ? new PrintWriter(args[1], "UTF-8") : new PrintWriter(System.out);
+                
+                new EventLogDecoder().decode(logInput, textWriter);
+                
+                textWriter.flush();
+                textWriter.close();
+                logInput.close();
+            }
+            catch (FileNotFoundException e)
+            {
+                System.out.println(e.getMessage());
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                System.out.println(e.getMessage());
+            }
+            catch (IOException e)
+            {
+                System.out.println(e.getMessage());
+            }
+        }
+        else
+        {
+            // Exit program.
+            System.out.println("Need correct parameters");
+            System.exit(0);
+        }
+    }
+    
+    /**
+     * Writes every record of a log as text.
+     * @param aLogInput DataInputStream, The log file, read from its start.
+     * @param aTextWriter PrintWriter, Where the text is written.
+     */
+    public void decode(DataInputStream aLogInput, PrintWriter aTextWriter) throws IOException
+    {
+        if( (aLogInput.readInt() != EventLog.MAGIC) || (aLogInput.readInt() != EventLog.VERSION) )
+        {
+            throw new IOException("Not an event log");
+        }
+        
+        byte[] record = new byte[aLogInput.readInt()];
+        ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+        
+        while(true)
+        {
+            try
+            {
+                aLogInput.readFully(record);
+            }
+            catch (EOFException e)
+            {
+                // A record cut short by the program exiting is left out.
+                break;
+            }
+            
+            aTextWriter.print(this.getRecordText(recordBuffer));
+        }
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Gets the text of one record.
+     * @param aRecord ByteBuffer, The record.
+     * @return String
+     */
+    private String getRecordText(ByteBuffer aRecord)
+    {
+        int event = aRecord.get(EventLog.EVENT_INDEX);
+        int value = aRecord.getInt(EventLog.VALUE_INDEX);
+        long time = aRecord.getLong(EventLog.TIME_INDEX);
+        
+        // PLD results follow on from the segment they were for.
+        if(event == EventLog.SENDER_PLD_DROPPED)
+        {
+            return "\n---- Was Dropped!";
+        }
+        else if(event == EventLog.SENDER_PLD_SENT)
+        {
+            return "\n++++ Was Successfully Sent!";
+        }
+        
+        StringBuilder text = new StringBuilder();
+        if(!this.firstEvent)
+        {
+            text.append("\n\n");
+        }
+        this.firstEvent = false;
+        text.append("TIME: "+time+"ms");
+        
+        if(aRecord.get(EventLog.HAS_HEADER_INDEX) == 0)
+        {
+            text.append("\n"+this.getMessage(event, value));
+            return text.toString();
+        }
+        
+        // Decode the raw header bytes.
+        ByteBuffer headerBytes = aRecord.duplicate();
+        headerBytes.limit(EventLog.HEADER_INDEX+MTPHeader.HEADER_BYTE_SIZE);
+        headerBytes.position(EventLog.HEADER_INDEX);
+        MTPHeader header = this.myMTPHeader.wrap(headerBytes.slice());
+        
+        ByteBuffer payLoad = aRecord.duplicate();
+        payLoad.limit(EventLog.PAYLOAD_INDEX+(aRecord.getShort(EventLog.PAYLOAD_LENGTH_INDEX) & 0xFFFF));
+        payLoad.position(EventLog.PAYLOAD_INDEX);
+        payLoad = payLoad.slice();
+        
+        text.append("\nEVENT: "+this.getEventName(event, value)+header.getSequenceNumber());
+        text.append("\nHEADER: SYN="+header.getSYN()+", ACK="+header.getACK()+", SrcPort="+header.getSRCPort()
+                    +", DestPort="+header.getDestPort()+", SeqNum="+header.getSequenceNumber()
+                    +", AckNum="+header.getAckNumber()+", MSS="+header.getMSS()+", MWS="+header.getMWS()
+                    +", Len="+header.getPayloadByteLength());
+        text.append("\nPAYLOAD: "+this.getPayLoadText(event, header, payLoad));
+        
+        return text.toString();
+    }
+    
+    /**
+     * Gets the text of an event without a segment.
+     * @param aEvent Integer, The event code.
+     * @param aValue Integer, The events value.
+     * @return String
+     */
+    private String getMessage(int aEvent, int aValue)
+    {
+        switch(aEvent)
+        {
+            case EventLog.ENTERING_HANDSHAKE:
+                return "Entering hanshaking mode";
+            case EventLog.SENDER_STARTING_TRANSFER:
+                return "Starting To Transfer Data!";
+            case EventLog.SENDER_TRANSFER_COMPLETE:
+                return ">>> ALL FILES HAVE BEEN TRANSMITED!.....SOCKET CLOSED!";
+            case EventLog.RECEIVER_READY:
+                return "Ready to Transfer Data!";
+            case EventLog.EVENTS_DROPPED:
+                return "!!!! "+aValue+" Events Were Not Logged!";
+            default:
+                return "UNKNOWN EVENT "+aEvent;
+        }
+    }
+    
+    /**
+     * Gets the text of a segment event, it is followed by the segments sequence number.
+     * @param aEvent Integer, The event code.
+     * @param aValue Integer, The events value.
+     * @return String
+     */
+    private String getEventName(int aEvent, int aValue)
+    {
+        switch(aEvent)
+        {
+            case EventLog.SENDER_SENT_SYN:
+                return "Attempting to Send SYN segment of Seq: ";
+            case EventLog.SENDER_RECEIVED_SYN_ACK:
+                return "RECEIVED SYN ACK segment of Seq: ";
+            case EventLog.SENDER_SENT_HANDSHAKE_ACK:
+                return "Attempting to Send 3rd segment in handshake of Seq: ";
+            case EventLog.SENDER_SENT_SEGMENT:
+                return "Attempting to Send Segment of Seq: ";
+            case EventLog.SENDER_TIMEOUT:
+                return "TIMEOUT! Attempting to Send Segment of Seq: ";
+            case EventLog.SENDER_FAST_RETRANSMIT:
+                return "FAST RETRANSMIT ATTEMPT! Segment of Seq: ";
+            case EventLog.SENDER_PARTIAL_ACK_RETRANSMIT:
+                return "PARTIAL ACK RETRANSMIT ATTEMPT! Segment of Seq: ";
+            case EventLog.SENDER_RACK_RETRANSMIT:
+                return "RACK RETRANSMIT ATTEMPT! Segment of Seq: ";
+            case EventLog.SENDER_TAIL_LOSS_PROBE:
+                return "TAIL LOSS PROBE! Segment of Seq: ";
+            case EventLog.SENDER_RECEIVED_ACK:
+                return "RECEIVED ACK segment of Seq: ";
+            case EventLog.SENDER_RECEIVED_DUPLICATE_ACK:
+                return "RECEIVED DUPLICATE ACK segment of Seq: ";
+            case EventLog.RECEIVER_RECEIVED_SYN:
+                return "RECEIVED SYN segment of Seq: ";
+            case EventLog.RECEIVER_SENT_SYN_ACK:
+                return "SENT SYN ACK segment of Seq: ";
+            case EventLog.RECEIVER_RECEIVED_HANDSHAKE_ACK:
+                return "RECEIVED 3rd segment in handshake of Seq: ";
+            case EventLog.RECEIVER_RECEIVED_SEGMENT:
+                return "RECEIVED Data Segment of Seq: ";
+            case EventLog.RECEIVER_SENT_ACK:
+                return "SENT ACK of Seq: ";
+            case EventLog.RECEIVER_SENT_UNEXPECTED_ACK:
+                return "NOT EXPECTING Sequence number: "+aValue+", SENT ACK for expected sequence number in segment of Seq: ";
+            case EventLog.RECEIVER_SENT_DRAINED_ACK:
+                return "SENT Accumulated ACK from send buffer with Seq: ";
+            case EventLog.RECEIVER_SENT_DELAYED_ACK:
+                return "SENT Delayed ACK of Seq: ";
+            default:
+                return "UNKNOWN EVENT "+aEvent+" of Seq: ";
+        }
+    }
+    
+    /**
+     * Gets the text of a segments payload.
+     * @param aEvent Integer, The event code.
+     * @param aHeader MTPHeader, The segments header.
+     * @param aPayLoad ByteBuffer, The payload bytes copied into the record.
+     * @return String
+     */
+    private String getPayLoadText(int aEvent, MTPHeader aHeader, ByteBuffer aPayLoad)
+    {
+        switch(aEvent)
+        {
+            case EventLog.SENDER_SENT_SYN:
+            case EventLog.RECEIVER_RECEIVED_SYN:
+                // Window scale and stream size.
+                int windowScale = aPayLoad.hasRemaining() ? Math.min(aPayLoad.get(0) & 0xFF, MTPHeader.MAX_WINDOW_SCALE) : 0;
+                long streamByteSize = (aPayLoad.remaining() >= MTPHeader.SYN_OPTIONS_BYTE_SIZE)
+                                      ? aPayLoad.getLong(MTPHeader.WINDOW_SCALE_BYTE_SIZE) : MTPHeader.UNKNOWN_STREAM_SIZE;
+                return "WINDOW SCALE "+windowScale+", STREAM SIZE "+streamByteSize;
+            case EventLog.SENDER_RECEIVED_SYN_ACK:
+            case EventLog.RECEIVER_SENT_SYN_ACK:
+                return "WINDOW SCALE "+(aPayLoad.hasRemaining() ? Math.min(aPayLoad.get(0) & 0xFF, MTPHeader.MAX_WINDOW_SCALE) : 0);
+            case EventLog.SENDER_SENT_HANDSHAKE_ACK:
+            case EventLog.RECEIVER_RECEIVED_HANDSHAKE_ACK:
+                return "NO DATA";
+            case EventLog.SENDER_RECEIVED_ACK:
+            case EventLog.SENDER_RECEIVED_DUPLICATE_ACK:
+            case EventLog.RECEIVER_SENT_ACK:
+            case EventLog.RECEIVER_SENT_UNEXPECTED_ACK:
+            case EventLog.RECEIVER_SENT_DRAINED_ACK:
+            case EventLog.RECEIVER_SENT_DELAYED_ACK:
+                // SACK blocks.
+                this.mySack.decode(aPayLoad);
+                return (this.mySack.getBlockCount() == 0) ? "NO DATA" : this.mySack.toString();
+            default:
+                // Data, only as much as was captured.
+                byte[] payLoadBytes = new byte[aPayLoad.remaining()];
+                aPayLoad.get(payLoadBytes);
+                int uncapturedBytes = aHeader.getPayloadByteLength()-payLoadBytes.length;
+                if(uncapturedBytes <= 0)
+                {
+                    return new String(payLoadBytes);
+                }
+                else if(payLoadBytes.length == 0)
+                {
+                    return "("+uncapturedBytes+" bytes not captured)";
+                }
+                return new String(payLoadBytes)+"... ("+uncapturedBytes+" bytes not captured)";
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+import java.util.Random;
+
+/**
+ * This class is used by the global sender, the global receiver and their associated classes to
+ * perform general transmission calculations and conversions. It lives in the shared 'mtp_core'
+ * sources so both endpoints use the one copy. 
+ * @author Charbel Zeaiter.
+ *
+ */
+public class MTPCalculation {
+    
+    // Class Fields /////////////////////////////////////////////////
+    private int seedValue;
+    private int maxIntNumber;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class constructor.
+     * @param aSeedValue Integer, Random number generator seed value.
+     * @param aMaxIntNumber Integer, Maximum integer number before overflow.
+     */
+    public MTPCalculation(int aSeedValue, int aMaxIntNumber)
+    {
+        this.seedValue = aSeedValue;
+        this.maxIntNumber = aMaxIntNumber;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Generates a random starting sequence number for the receiver.
+     * @return Integer, A sequence number.
+     */
+    public int getStartingSeqNum()
+    {
+        Random newRGen = new Random(this.seedValue);
+        
+        return newRGen.nextInt(this.maxIntNumber);
+    }
+
+    /**
+     * Used to get the next segment sequence number without overflowing the Integer used. Sequence
+     * numbers live in the serial number space [0, maxIntNumber] and wrap back to 0, so this is a
+     * single modular addition whatever the increment.
+     * @param aCurrentSeqNum Integer, The current sequence number.
+     * @param aIncrement Integer, The number to increment by.
+     * @return Integer, Next sequence number.
+     */
+    public int getNextSeqNum(int aCurrentSeqNum, int aIncrement)
+    {
+        long newSeqNum = ((long)aCurrentSeqNum + aIncrement) % this.getSeqNumSpace();
+        
+        return (int)newSeqNum;
+    }
+    
+    /**
+     * Gets how far forward a sequence number is from another one, going around the wrap point
+     * when needed.
+     * @param aFromSeqNum Integer, The starting sequence number.
+     * @param aToSeqNum Integer, The sequence number to measure to.
+     * @return Integer, The forward distance from 'aFromSeqNum' to 'aToSeqNum'.
+     */
+    public int getSeqDistance(int aFromSeqNum, int aToSeqNum)
+    {
+        long distance = ((long)aToSeqNum - aFromSeqNum) % this.getSeqNumSpace();
+        
+        if(distance < 0)
+        {
+            distance += this.getSeqNumSpace();
+        }
+        
+        return (int)distance;
+    }
+    
+    /**
+     * Serial number (RFC 1982) 'less than': a sequence number comes before another when the other
+     * is less than half the sequence number space ahead of it. Safe across the wrap point.
+     * @param aSeqNum Integer, A sequence number.
+     * @param aOtherSeqNum Integer, The sequence number to compare against.
+     * @return Boolean, If 'aSeqNum' comes before 'aOtherSeqNum'.
+     */
+    public boolean isSeqBefore(int aSeqNum, int aOtherSeqNum)
+    {
+        int distance = this.getSeqDistance(aSeqNum, aOtherSeqNum);
+        
+        return (distance != 0) && (distance < this.getSeqNumSpace()/2);
+    }
+    
+    /**
+     * Serial number (RFC 1982) 'greater than', see isSeqBefore.
+     * @param aSeqNum Integer, A sequence number.
+     * @param aOtherSeqNum Integer, The sequence number to compare against.
+     * @return Boolean, If 'aSeqNum' comes after 'aOtherSeqNum'.
+     */
+    public boolean isSeqAfter(int aSeqNum, int aOtherSeqNum)
+    {
+        return this.isSeqBefore(aOtherSeqNum, aSeqNum);
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Gets the number of distinct sequence numbers.
+     * @return Long
+     */
+    private long getSeqNumSpace()
+    {
+        return (long)this.maxIntNumber + 1;
+    }
+    
+}
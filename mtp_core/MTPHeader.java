@@ -0,0 +1,392 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This Class is used to get and set values of the headers used in MTP segments. The header
+ * fields are read and written directly in their 21 byte wire layout inside a ByteBuffer using
+ * shifts and masks, so no objects are created per segment.
+ *
+ * Wire layout: header bit 'i' lives in byte (20 - i/8) under the mask (1 << i%8), and every
+ * multi-bit field is stored most significant bit first starting at its bit index.
+ * @author Charbel Zeaiter, z3419481.
+ */
+public class MTPHeader {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    public static final int HEADER_BYTE_SIZE = 21;
+    
+    // Window scaling: a SYN (and SYN ACK) carries a one byte payload with the shift its sender
+    // applies to every MWS value it sends, so windows aren't capped by the 16 bit field.
+    public static final int WINDOW_SCALE_BYTE_SIZE = 1;
+    public static final int MAX_WINDOW_SCALE = 14;
+    public static final int MAX_16_BIT_VALUE = 65535;
+    
+    // The SYN payload follows the window scale with the size of the stream to be sent in bytes
+    // (8 bytes, most significant first), or UNKNOWN_STREAM_SIZE if the sender can't tell.
+    public static final int STREAM_SIZE_BYTE_SIZE = 8;
+    public static final int SYN_OPTIONS_BYTE_SIZE = WINDOW_SCALE_BYTE_SIZE+STREAM_SIZE_BYTE_SIZE;
+    public static final long UNKNOWN_STREAM_SIZE = -1;
+    
+    private static final int LAST_BYTE_INDEX = HEADER_BYTE_SIZE-1;
+    private static final int BIT_WIDTH_1 = 1;
+    private static final int BIT_WIDTH_16 = 16;
+    private static final int BIT_WIDTH_32 = 32;
+    private static final int INDEX_OF_SYN = 0;
+    private static final int INDEX_OF_ACK = 1;
+    private static final int INDEX_OF_DEST_PORT = 2;
+    private static final int INDEX_OF_SRC_PORT = 18;
+    private static final int INDEX_OF_SEQUENCE_NUMBER = 34;
+    private static final int INDEX_OF_ACK_NUMBER = 66;
+    private static final int INDEX_OF_MSS = 98;
+    private static final int INDEX_OF_MWS = 114;
+    private static final int INDEX_OF_PAYLOAD_BYTE_LENGTH = 130;
+    private static final int INDEX_OF_END_OF_HEADER_BIT = 162;
+    
+    private ByteBuffer headerBuffer;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class constructor, creates an empty header with its own buffer. The buffer is direct so
+     * it can be handed to a channel write without being copied first.
+     */
+    public MTPHeader()
+    {
+        this.headerBuffer = ByteBuffer.allocateDirect(HEADER_BYTE_SIZE);
+        
+        this.clear();
+    }
+    
+    /**
+     * Class constructor, uses the first 21 bytes of the given buffer as the header.
+     * @param aByteBuffer ByteBuffer, The reference of the buffer holding the header bytes.
+     */
+    public MTPHeader(ByteBuffer aByteBuffer)
+    {
+        this.wrap(aByteBuffer);
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Clears all header fields leaving only the end of header bit set, so the header can be re-used.
+     */
+    public void clear()
+    {
+        for(int i=0;i<HEADER_BYTE_SIZE;i++)
+        {
+            this.headerBuffer.put(i, (byte)0);
+        }
+        
+        this.setField(INDEX_OF_END_OF_HEADER_BIT, BIT_WIDTH_1, 1);
+    }
+    
+    /**
+     * Points this header at the first 21 bytes of another buffer. Lets one header object be
+     * used as a view over every received segment without copying or creating anything.
+     * @param aByteBuffer ByteBuffer, The reference of the buffer holding the header bytes.
+     * @return MTPHeader, This header.
+     */
+    public MTPHeader wrap(ByteBuffer aByteBuffer)
+    {
+        this.headerBuffer = aByteBuffer;
+        
+        return this;
+    }
+    
+    /**
+     * Gets a slice of the viewed buffer holding the payload that follows the header. The slice
+     * shares its bytes with the buffer, nothing is copied.
+     * @return ByteBuffer, The payload bytes (position 0, limit the payload byte length).
+     */
+    public ByteBuffer slicePayLoad()
+    {
+        ByteBuffer payLoad = this.headerBuffer.duplicate();
+        payLoad.limit(HEADER_BYTE_SIZE+this.getPayloadByteLength());
+        payLoad.position(HEADER_BYTE_SIZE);
+        
+        return payLoad.slice();
+    }
+    
+    /**
+     * Gets the buffer holding the header bytes.
+     * @return ByteBuffer
+     */
+    public ByteBuffer getByteBuffer()
+    {
+        return this.headerBuffer;
+    }
+    
+    /**
+     * Sets the SYN header flag.
+     */
+    public void setSYN()
+    {
+        this.setField(INDEX_OF_SYN, BIT_WIDTH_1, 1);
+    }
+    
+    /**
+     * Clears the SYN header flag.
+     */
+    public void clearSYN()
+    {
+        this.setField(INDEX_OF_SYN, BIT_WIDTH_1, 0);
+    }
+    
+    /**
+     * Returns the value of the SYN flag bit.
+     * @return Boolean, If flag is set or cleared.
+     */
+    public boolean getSYN()
+    {
+        return this.getField(INDEX_OF_SYN, BIT_WIDTH_1) == 1;
+    }
+    
+    /**
+     * Sets the ACK flag in the header.
+     */
+    public void setACK()
+    {
+        this.setField(INDEX_OF_ACK, BIT_WIDTH_1, 1);
+    }
+    
+    /**
+     * Clears the ACK flag in the header.
+     */
+    public void clearACK()
+    {
+        this.setField(INDEX_OF_ACK, BIT_WIDTH_1, 0);
+    }
+    
+    /**
+     * Returns the bit in the ACK flag.
+     * @return Boolean
+     */
+    public boolean getACK()
+    {
+        return this.getField(INDEX_OF_ACK, BIT_WIDTH_1) == 1;
+    }
+    
+    /**
+     * Sets the destination port value in the header.
+     * @param aDestPort Integer, The destination port.
+     */
+    public void setDestPort(int aDestPort)
+    {
+        this.setField(INDEX_OF_DEST_PORT, BIT_WIDTH_16, aDestPort);
+    }
+    
+    /**
+     * Gets the destination port value from the header.
+     * @return Integer, Destination port.
+     */
+    public int getDestPort()
+    {
+        return this.getField(INDEX_OF_DEST_PORT, BIT_WIDTH_16);
+    }
+    
+    /**
+     * Sets the source port number value in the header.
+     * @param aSRCPort Integer, A source port number.
+     */
+    public void setSRCPort(int aSRCPort)
+    {
+        this.setField(INDEX_OF_SRC_PORT, BIT_WIDTH_16, aSRCPort);
+    }
+    
+    /**
+     * Gets the source port value from the header.
+     * @return Integer, Source port.
+     */
+    public int getSRCPort()
+    {
+        return this.getField(INDEX_OF_SRC_PORT, BIT_WIDTH_16);
+    }
+    
+    /**
+     * Sets the sequence number value in the header.
+     * @param aSequenceNumber Integer, A sequence number.
+     */
+    public void setSequenceNumber(int aSequenceNumber)
+    {
+        this.setField(INDEX_OF_SEQUENCE_NUMBER, BIT_WIDTH_32, aSequenceNumber);
+    }
+    
+    /**
+     * Gets the sequence number value from MTP header.
+     * @return Integer, A sequence number value.
+     */
+    public int getSequenceNumber()
+    {
+        return this.getField(INDEX_OF_SEQUENCE_NUMBER, BIT_WIDTH_32);
+    }
+    
+    /**
+     * Sets the ACK Number value in the MTP header.
+     * @param aAckNumber Integer, The ACK Number value to put in the header.
+     */
+    public void setAckNumber(int aAckNumber)
+    {
+        this.setField(INDEX_OF_ACK_NUMBER, BIT_WIDTH_32, aAckNumber);
+    }
+    
+    /**
+     * Gets the ACK Number value from the MTP header.
+     * @return Integer, ACK Number value.
+     */
+    public int getAckNumber()
+    {
+        return this.getField(INDEX_OF_ACK_NUMBER, BIT_WIDTH_32);
+    }
+    
+    /**
+     * Sets the MSS value in the MTP header.
+     * @param aMSS Integer, A MSS value.
+     */
+    public void setMSS(int aMSS)
+    {
+        this.setField(INDEX_OF_MSS, BIT_WIDTH_16, aMSS);
+    }
+    
+    /**
+     * Gets the MSS value from the MTP header.
+     * @return Integer, MSS value.
+     */
+    public int getMSS()
+    {
+        return this.getField(INDEX_OF_MSS, BIT_WIDTH_16);
+    }
+    
+    /**
+     * Sets the MWS value in the MTP header.
+     * @param aMWS Integer, A MWS value.
+     */
+    public void setMWS(int aMWS)
+    {
+        this.setField(INDEX_OF_MWS, BIT_WIDTH_16, aMWS);
+    }
+    
+    /**
+     * Gets the MWS value from the MTP header.
+     * @return Integer, header MWS value.
+     */
+    public int getMWS()
+    {
+        return this.getField(INDEX_OF_MWS, BIT_WIDTH_16);
+    }
+    
+    /**
+     * Sets the MWS value in the MTP header from a window that may not fit the 16 bit field.
+     * @param aWindow Long, The window.
+     * @param aWindowScale Integer, The shift the window is sent with.
+     */
+    public void setScaledMWS(long aWindow, int aWindowScale)
+    {
+        this.setMWS((int)Math.min(MAX_16_BIT_VALUE, aWindow >> aWindowScale));
+    }
+    
+    /**
+     * Gets the window from the MTP header MWS value.
+     * @param aWindowScale Integer, The shift the window was sent with.
+     * @return Long, The window.
+     */
+    public long getScaledMWS(int aWindowScale)
+    {
+        return ((long)this.getMWS()) << aWindowScale;
+    }
+    
+    /**
+     * Gets the smallest shift that fits a window into the 16 bit MWS field.
+     * @param aWindow Long, The window.
+     * @return Integer, The shift, at most MAX_WINDOW_SCALE.
+     */
+    public static int getWindowScale(long aWindow)
+    {
+        int windowScale = 0;
+        while( ((aWindow >> windowScale) > MAX_16_BIT_VALUE) && (windowScale < MAX_WINDOW_SCALE) )
+        {
+            windowScale++;
+        }
+        
+        return windowScale;
+    }
+    
+    /**
+     * Sets the payload value in the MTP header.
+     * @param aPayloadByteLength Integer, A payload value.
+     */
+    public void setPayloadByteLength(int aPayloadByteLength)
+    {
+        this.setField(INDEX_OF_PAYLOAD_BYTE_LENGTH, BIT_WIDTH_32, aPayloadByteLength);
+    }
+    
+    /**
+     * Gets the payload value from the MTP header.
+     * @return Integer, The payload value
+     */
+    public int getPayloadByteLength()
+    {
+        return this.getField(INDEX_OF_PAYLOAD_BYTE_LENGTH, BIT_WIDTH_32);
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Reads a field out of the header bytes.
+     * @param aBitIndex Integer, The header bit index the field starts at.
+     * @param aBitWidth Integer, The number of bits in the field (at most 32).
+     * @return Integer, The field value.
+     */
+    private int getField(int aBitIndex, int aBitWidth)
+    {
+        int firstByte = aBitIndex >>> 3;
+        int lastByte = (aBitIndex+aBitWidth-1) >>> 3;
+        
+        // Gather the bytes covering the field, lowest bit index in the lowest bits.
+        long bits = 0;
+        for(int i=lastByte;i>=firstByte;i--)
+        {
+            bits = (bits << 8) | (this.headerBuffer.get(LAST_BYTE_INDEX-i) & 0xFF);
+        }
+        
+        // Line the field up at bit 0 and undo its most significant bit first ordering.
+        // Reversing moves any neighbouring bits below the field, where the final shift drops them.
+        int rawField = (int)(bits >>> (aBitIndex & 7));
+        
+        return Integer.reverse(rawField) >>> (BIT_WIDTH_32-aBitWidth);
+    }
+    
+    /**
+     * Writes a field into the header bytes, leaving all other bits untouched.
+     * @param aBitIndex Integer, The header bit index the field starts at.
+     * @param aBitWidth Integer, The number of bits in the field (at most 32).
+     * @param aValue Integer, The field value, only the low 'aBitWidth' bits are stored.
+     */
+    private void setField(int aBitIndex, int aBitWidth, int aValue)
+    {
+        int firstByte = aBitIndex >>> 3;
+        int lastByte = (aBitIndex+aBitWidth-1) >>> 3;
+        int shift = aBitIndex & 7;
+        
+        // Put the field into most significant bit first ordering and line it up with the bytes.
+        long mask = ((1L << aBitWidth)-1) << shift;
+        long field = ((Integer.reverse(aValue) >>> (BIT_WIDTH_32-aBitWidth)) & 0xFFFFFFFFL) << shift;
+        
+        // Gather the bytes covering the field.
+        long bits = 0;
+        for(int i=lastByte;i>=firstByte;i--)
+        {
+            bits = (bits << 8) | (this.headerBuffer.get(LAST_BYTE_INDEX-i) & 0xFF);
+        }
+        
+        bits = (bits & ~mask) | field;
+        
+        // Scatter the bytes back into the header.
+        for(int i=firstByte;i<=lastByte;i++)
+        {
+            this.headerBuffer.put(LAST_BYTE_INDEX-i, (byte)bits);
+            bits = bits >>> 8;
+        }
+    }
+
+}
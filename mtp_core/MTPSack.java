@@ -0,0 +1,150 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This Class holds the selective acknowledgement (SACK) blocks an ack segment carries. Each block
+ * is a range [start, end) of sequence numbers the receiver holds beyond its cumulative ack. The
+ * blocks travel as the payload of an ack segment, 8 bytes per block (start then end, 32 bit big
+ * endian), so a segment with the ACK flag and a payload carries SACK information.
+ * One object is re-used for every ack, encoding into and decoding from its own buffers.
+ * @author Charbel Zeaiter
+ */
+public class MTPSack {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    public static final int MAX_BLOCKS = 4;
+    public static final int BLOCK_BYTE_SIZE = 8;
+    public static final int MAX_BYTE_SIZE = MAX_BLOCKS*BLOCK_BYTE_SIZE;
+    
+    private int[] blockStarts;
+    private int[] blockEnds;
+    private int blockCount;
+    private ByteBuffer encodeBuffer;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor, holds no blocks.
+     */
+    public MTPSack()
+    {
+        this.blockStarts = new int[MAX_BLOCKS];
+        this.blockEnds = new int[MAX_BLOCKS];
+        this.blockCount = 0;
+        this.encodeBuffer = ByteBuffer.allocateDirect(MAX_BYTE_SIZE);
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Removes every block.
+     */
+    public void clear()
+    {
+        this.blockCount = 0;
+    }
+    
+    /**
+     * Adds a block, unless all the blocks are used.
+     * @param aStartSeqNum Integer, The first sequence number held.
+     * @param aEndSeqNum Integer, The sequence number following the last one held.
+     * @return Boolean, False if there was no room for the block.
+     */
+    public boolean add(int aStartSeqNum, int aEndSeqNum)
+    {
+        if(this.blockCount == MAX_BLOCKS)
+        {
+            return false;
+        }
+        
+        this.blockStarts[this.blockCount] = aStartSeqNum;
+        this.blockEnds[this.blockCount] = aEndSeqNum;
+        this.blockCount++;
+        
+        return true;
+    }
+    
+    /**
+     * Gets the number of blocks.
+     * @return Integer
+     */
+    public int getBlockCount()
+    {
+        return this.blockCount;
+    }
+    
+    /**
+     * Gets the first sequence number of a block.
+     * @param aIndex Integer, The block index.
+     * @return Integer
+     */
+    public int getStart(int aIndex)
+    {
+        return this.blockStarts[aIndex];
+    }
+    
+    /**
+     * Gets the sequence number following a block.
+     * @param aIndex Integer, The block index.
+     * @return Integer
+     */
+    public int getEnd(int aIndex)
+    {
+        return this.blockEnds[aIndex];
+    }
+    
+    /**
+     * Encodes the blocks as an ack payload.
+     * @return ByteBuffer, The payload (valid until the next encode), or null if there are no blocks.
+     */
+    public ByteBuffer encode()
+    {
+        if(this.blockCount == 0)
+        {
+            return null;
+        }
+        
+        this.encodeBuffer.clear();
+        for(int i=0;i<this.blockCount;i++)
+        {
+            this.encodeBuffer.putInt(this.blockStarts[i]);
+            this.encodeBuffer.putInt(this.blockEnds[i]);
+        }
+        this.encodeBuffer.flip();
+        
+        return this.encodeBuffer;
+    }
+    
+    /**
+     * Replaces the blocks with those encoded in an ack payload, extra bytes are ignored.
+     * @param aPayLoad ByteBuffer, The payload of an ack segment (read from its position, which is left unchanged).
+     */
+    public void decode(ByteBuffer aPayLoad)
+    {
+        this.blockCount = 0;
+        
+        int position = aPayLoad.position();
+        while( (this.blockCount < MAX_BLOCKS) && (aPayLoad.limit()-position >= BLOCK_BYTE_SIZE) )
+        {
+            this.add(aPayLoad.getInt(position), aPayLoad.getInt(position+4));
+            position += BLOCK_BYTE_SIZE;
+        }
+    }
+    
+    /**
+     * Describes the blocks for the logs.
+     * @return String
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder description = new StringBuilder("SACK");
+        for(int i=0;i<this.blockCount;i++)
+        {
+            description.append(" [").append(this.blockStarts[i]).append(",").append(this.blockEnds[i]).append(")");
+        }
+        
+        return description.toString();
+    }
+    
+}
@@ -0,0 +1,169 @@
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This Class is a re-armable timer for protocol deadlines (retransmission timeouts etc.). Every
+ * timer in the process shares one long-lived daemon thread, so arming a timer never creates a
+ * thread. A timer holds a single deadline and only schedules a check on the shared thread when it
+ * has none pending or its deadline moves earlier, so re-arming it later (on every ack) or cancelling
+ * it is just a field update. A check that finds the deadline moved later re-schedules itself.
+ * @author Charbel Zeaiter
+ */
+public class MTPTimer {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    private static final ScheduledThreadPoolExecutor TIMER_EXECUTOR = createExecutor();
+    
+    private Runnable myTimeoutTask;
+    private long deadlineNanos;
+    private boolean armed;
+    private Check myPendingCheck;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor, the timer starts disarmed.
+     * @param aTimeoutTask Runnable, Run on the timer thread each time an armed deadline passes.
+     */
+    public MTPTimer(Runnable aTimeoutTask)
+    {
+        this.myTimeoutTask = aTimeoutTask;
+        this.armed = false;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Arms the timer to expire after the specified delay, replacing any earlier deadline.
+     * @param aDelayMillis Long, The delay in milliseconds.
+     */
+    public synchronized void arm(long aDelayMillis)
+    {
+        this.deadlineNanos = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(aDelayMillis);
+        this.armed = true;
+        
+        // A pending check at or before the deadline will find it, otherwise check earlier.
+        if( (this.myPendingCheck == null) || (this.myPendingCheck.checkNanos-this.deadlineNanos > 0) )
+        {
+            if(this.myPendingCheck != null)
+            {
+                this.myPendingCheck.future.cancel(false);
+            }
+            
+            this.scheduleCheck();
+        }
+    }
+    
+    /**
+     * Disarms the timer, a pending check is left to find it disarmed.
+     */
+    public synchronized void cancel()
+    {
+        this.armed = false;
+    }
+    
+    /**
+     * Checks if the timer is armed.
+     * @return Boolean
+     */
+    public synchronized boolean isArmed()
+    {
+        return this.armed;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Schedules a check on the shared timer thread for the current deadline.
+     */
+    private void scheduleCheck()
+    {
+        Check newCheck = new Check(this.deadlineNanos);
+        this.myPendingCheck = newCheck;
+        
+        long delayNanos = Math.max(0, this.deadlineNanos-System.nanoTime());
+        newCheck.future = TIMER_EXECUTOR.schedule(newCheck, delayNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Runs a check that has come due, firing the timeout task if the deadline has passed.
+     * @param aCheck Check, The check that came due.
+     */
+    private void runCheck(Check aCheck)
+    {
+        synchronized(this)
+        {
+            // A check replaced by an earlier one has nothing left to do.
+            if(aCheck != this.myPendingCheck)
+            {
+                return;
+            }
+            this.myPendingCheck = null;
+            
+            if(!this.armed)
+            {
+                return;
+            }
+            
+            // The deadline was moved later since this check was scheduled.
+            if(System.nanoTime()-this.deadlineNanos < 0)
+            {
+                this.scheduleCheck();
+                return;
+            }
+            
+            this.armed = false;
+        }
+        
+        // Expired, the task runs without this timers lock held so it can re-arm.
+        this.myTimeoutTask.run();
+    }
+    
+    /**
+     * Creates the single timer thread shared by every timer.
+     * @return ScheduledThreadPoolExecutor
+     */
+    private static ScheduledThreadPoolExecutor createExecutor()
+    {
+        ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable aRunnable)
+            {
+                Thread newThread = new Thread(aRunnable, "mtp-timer");
+                newThread.setDaemon(true);
+                return newThread;
+            }
+        });
+        
+        // Cancelled checks are dropped from the queue straight away.
+        newExecutor.setRemoveOnCancelPolicy(true);
+        
+        return newExecutor;
+    }
+    
+    /**
+     * A check scheduled on the timer thread for a point in time.
+     */
+    private class Check implements Runnable {
+        
+        private long checkNanos;
+        private ScheduledFuture<?> future;
+        
+        /**
+         * Class Constructor.
+         * @param aCheckNanos Long, The System.nanoTime() the check is due at.
+         */
+        public Check(long aCheckNanos)
+        {
+            this.checkNanos = aCheckNanos;
+        }
+        
+        public void run()
+        {
+            MTPTimer.this.runCheck(this);
+        }
+    }
+
+}
@@ -1,12 +1,12 @@
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.util.BitSet;
-import java.util.PriorityQueue;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -19,25 +19,76 @@ public class Receiver {
     // Class Fields /////////////////////////////////////////////////
     
     public final int HEADER_BYTE_SIZE;
-    public final int HEADER_BIT_LENGTH;
     public final int RECEIVER_HOST_PORT;
     public final int SEED_VALUE;
     public final int MAX_INT_NUMBER;
     public final String FILENAME;
+    public final int BUFFER_BYTE_SIZE;
+    
+    // Buffer size that makes the receiver size its buffer to the senders window.
+    public static final int BUFFER_MATCH_SENDER = 0;
+    
+    // The buffer never exceeds a quarter of the sequence number space.
+    public static final int MAX_BUFFER_BYTE_SIZE = 1 << 29;
+    
+    // Received segment buffers kept for reuse, segments are handled one at a time.
+    private static final int MAX_FREE_SEGMENT_BUFFERS = 4;
+    
+    // The socket receive buffer asked for never exceeds this (the OS may cap it lower).
+    public static final int MAX_SOCKET_BUFFER_BYTE_SIZE = 1 << 26;
+    
+    // The most the OS charges the socket receive buffer per datagram beyond its bytes (Linux
+    // counts its packet bookkeeping against the buffer too).
+    private static final int DATAGRAM_OVERHEAD_BYTE_SIZE = 1024;
+    
+    // In order segments are acked every second segment, or once the delay has passed. The delay is
+    // kept below the senders 10ms RTO floor so a delayed ack never causes a timeout.
+    public static final int DEFAULT_ACK_EVERY = 2;
+    public static final long DEFAULT_ACK_DELAY_MILLIS = 5;
+    public final int ACK_EVERY;
+    public final long ACK_DELAY_MILLIS;
+    
+    // The send thread spins this long for the next filled gap before it parks.
+    public static final long DEFAULT_SPIN_MICROS = 50;
+    public final long SPIN_NANOS;
+    
+    // Payload bytes of each data segment copied into the event log.
+    public final int LOG_CAPTURE_BYTES;
+    
     public boolean connected;
     public int senderHostPort;
-    public final String CLIENT_HOST_IP;
+    public SocketAddress senderAddress;
     public int sequenceNumber;
     public int ackNumber;
     public int mss;
     public int mws;
+    public int windowScale;
+    public int peerWindowScale;
+    public int receiveBufferBytes;
     public MTPCalculation myMTPCalculation;
-    public DatagramSocket socketUDP;
-    public PriorityQueue<QueueFour> myReceiveBuffer;
+    public DatagramChannel channelUDP;
+    public ReorderBuffer myReceiveBuffer;
     public ReentrantLock myLock;
-    public PrintWriter myPrintWriter;
-    public PrintWriter receiverLogWriter;
-    public long startingSystemTime;
+    public FileChannel myFileChannel;
+    public long streamByteSize;
+    public long ackOffset;
+    public EventLog myEventLog;
+    public MTPTimer ackTimer;
+    public Thread drainThread;
+    public BufferPool myBufferPool;
+    
+    // In order segments received since the last ack (guarded by myLock).
+    public int unackedSegments;
+    
+    // Re-used for every gathering write (guarded by myLock).
+    private ByteBuffer[] mySegmentBuffers;
+    
+    // Set by the receive thread when the send thread has buffered segments to drain.
+    private volatile boolean drainPending;
+    
+    // Re-used for every ack (guarded by myLock).
+    private MTPHeader myAckMTPHeader;
+    private MTPSack myAckSack;
     
     // Class Constructor ////////////////////////////////////////////
     
@@ -45,47 +96,54 @@ public class Receiver {
      * Constructor 
      * @param aReceiverPort Integer, Port used to listen and send on.
      * @param aFilename String, The Filename of received file.
+     * @param aBufferByteSize Integer, The out of order buffer size in bytes, or BUFFER_MATCH_SENDER.
+     * @param aAckEvery Integer, The number of in order segments acked at once, 1 acks every segment.
+     * @param aAckDelayMillis Long, The longest an in order segment waits for its ack.
+     * @param aSpinMicros Long, How long the send thread spins for work before it parks, 0 parks straight away.
+     * @param aLogCaptureBytes Integer, The payload bytes of each data segment copied into the event log, 0 copies none.
      */
-    public Receiver(int aReceiverPort, String aFilename)
+    public Receiver(int aReceiverPort, String aFilename, int aBufferByteSize, int aAckEvery, long aAckDelayMillis, long aSpinMicros, int aLogCaptureBytes)
     {   
         // Set all default values & create default objects.
         this.RECEIVER_HOST_PORT = aReceiverPort;
         this.FILENAME = aFilename;
-        this.HEADER_BIT_LENGTH = 164;
-        this.HEADER_BYTE_SIZE = 21;
+        this.BUFFER_BYTE_SIZE = aBufferByteSize;
+        this.ACK_EVERY = Math.max(1, aAckEvery);
+        this.ACK_DELAY_MILLIS = aAckDelayMillis;
+        this.SPIN_NANOS = Math.max(0, aSpinMicros)*1000;
+        this.LOG_CAPTURE_BYTES = aLogCaptureBytes;
+        this.drainPending = false;
+        this.unackedSegments = 0;
+        this.HEADER_BYTE_SIZE = MTPHeader.HEADER_BYTE_SIZE;
         this.MAX_INT_NUMBER = 2147483647;
         this.SEED_VALUE = 50;
-        this.CLIENT_HOST_IP = "localhost";
         this.connected = false;
         
         this.myMTPCalculation = new MTPCalculation(this.SEED_VALUE, this.MAX_INT_NUMBER);
-        this.myReceiveBuffer = new PriorityQueue<QueueFour>();
         this.myLock = new ReentrantLock();
+        this.mySegmentBuffers = new ByteBuffer[2];
+        this.myAckMTPHeader = new MTPHeader();
+        this.myAckSack = new MTPSack();
+        this.ackTimer = new MTPTimer(new ReceiverAckTask(this));
         
-        // Creating a UDP socket to send and listen on.
+        // Until the MSS is known only handshake segments are received.
+        this.myBufferPool = new BufferPool(this.HEADER_BYTE_SIZE+MTPHeader.SYN_OPTIONS_BYTE_SIZE, 1);
+        
+        // Creating a UDP channel to send and listen on.
         try
         { 
-            this.socketUDP = new DatagramSocket(this.RECEIVER_HOST_PORT);
+            this.channelUDP = DatagramChannel.open();
+            this.channelUDP.bind(new InetSocketAddress(this.RECEIVER_HOST_PORT));
         } catch (IOException e) {
             // Get current line number.
             int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
-                
+            
             // Handle exception.
             this.processException(e, lineNumber);
         }
         
-        // Create receivers text log file reference.
-        try 
-        {
-            this.receiverLogWriter = new PrintWriter("mtp_receiver_log.txt", "UTF-8");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-        }
-        
-        // Get program starting time.
-        this.startingSystemTime = System.currentTimeMillis();
+        // Create receivers binary event log file, written by its own thread.
+        this.myEventLog = new EventLog("mtp_receiver_log.bin", this.LOG_CAPTURE_BYTES);
     }
     
     // Class Methods ////////////////////////////////////////////////
@@ -96,23 +154,17 @@ public class Receiver {
      */
     public void handShakeReceive()
     {   
-        // Output sender status/event to text log file.
-        this.receiverLogWriter.print("TIME: "+this.getCurrentSeconds()+"ms");
-        this.receiverLogWriter.print("\nEntering hanshaking mode");
-        this.receiverLogWriter.flush();
+        // Log receiver status/event.
+        this.myEventLog.log(EventLog.ENTERING_HANDSHAKE);
         
         // Output Host State.
         System.out.println("State: SYN_WAIT");
         
-        byte[] byteSegment = this.receiveMTPSegment();
+        ByteBuffer byteSegment = this.receiveMTPSegment();
         
-        // Extract Header.
-        byteSegment = this.myMTPCalculation.extractHeader(byteSegment, this.HEADER_BYTE_SIZE);
+        // Create header view to access fields.
+        MTPHeader receivedMTPHeader = new MTPHeader(byteSegment);
         
-        // Create header BitSet to access bits.
-        BitSet receivedHeaderBits = this.myMTPCalculation.fromByteArray(byteSegment);
-        MTPHeader receivedMTPHeader = new MTPHeader(receivedHeaderBits);
-            
         // Check to see if SYN bit is set.
         if(receivedMTPHeader.getSYN())
         {
@@ -120,18 +172,61 @@ public class Receiver {
             this.senderHostPort = receivedMTPHeader.getSRCPort();
             this.ackNumber = this.myMTPCalculation.getNextSeqNum(receivedMTPHeader.getSequenceNumber(), 1);
             this.mss = receivedMTPHeader.getMSS();
-            this.mws = receivedMTPHeader.getMWS();
+            
+            // Window scaling, if the sender offered it the payload holds its shift.
+            this.peerWindowScale = 0;
+            if(receivedMTPHeader.getPayloadByteLength() >= MTPHeader.WINDOW_SCALE_BYTE_SIZE)
+            {
+                this.peerWindowScale = Math.min(receivedMTPHeader.slicePayLoad().get(0) & 0xFF, MTPHeader.MAX_WINDOW_SCALE);
+            }
+            
+            // The size of the stream, if the sender knows it, follows.
+            this.streamByteSize = MTPHeader.UNKNOWN_STREAM_SIZE;
+            if(receivedMTPHeader.getPayloadByteLength() >= MTPHeader.SYN_OPTIONS_BYTE_SIZE)
+            {
+                this.streamByteSize = receivedMTPHeader.slicePayLoad().getLong(MTPHeader.WINDOW_SCALE_BYTE_SIZE);
+            }
+            this.mws = (int)Math.min(Integer.MAX_VALUE, receivedMTPHeader.getScaledMWS(this.peerWindowScale));
+            
+            // Size the out of order buffer, the window advertised never reaches past its end.
+            long bufferByteSize = (this.BUFFER_BYTE_SIZE == BUFFER_MATCH_SENDER) ? ((long)this.mws)*this.mss : this.BUFFER_BYTE_SIZE;
+            this.receiveBufferBytes = (int)Math.min(MAX_BUFFER_BYTE_SIZE, Math.max(bufferByteSize, this.mss));
+            this.mws = this.receiveBufferBytes/Math.max(1, this.mss);
+            this.myReceiveBuffer = new ReorderBuffer(this.mss, this.receiveBufferBytes);
+            this.myBufferPool = new BufferPool(this.HEADER_BYTE_SIZE+Math.max(this.mss, MTPHeader.SYN_OPTIONS_BYTE_SIZE), MAX_FREE_SEGMENT_BUFFERS);
             this.sequenceNumber = this.myMTPCalculation.getStartingSeqNum();
             
-            // Output sender status/event to text log file.
-            this.receiverLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-            this.receiverLogWriter.print("\nEVENT: RECEIVED SYN segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-            this.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                        +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                        +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                        +", Len="+receivedMTPHeader.getPayloadByteLength());
-            this.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-            this.receiverLogWriter.flush();
+            // Reply to wherever the SYN came from, the address is only resolved once.
+            try
+            {
+                this.channelUDP.connect(this.senderAddress);
+                
+                // The receive thread writes each segment to the file before it acks it, so while a slow
+                // disk holds it up the socket has to hold everything the window lets the sender send.
+                int datagramByteSize = this.HEADER_BYTE_SIZE+this.mss+DATAGRAM_OVERHEAD_BYTE_SIZE;
+                long socketBufferBytes = Math.min(MAX_SOCKET_BUFFER_BYTE_SIZE, ((long)this.mws+1)*datagramByteSize);
+                if(socketBufferBytes > this.channelUDP.getOption(StandardSocketOptions.SO_RCVBUF))
+                {
+                    this.channelUDP.setOption(StandardSocketOptions.SO_RCVBUF, (int)socketBufferBytes);
+                }
+                
+                // The OS may give less than asked, the window shrinks to what it gave so a stalled
+                // write holds the sender back instead of the socket dropping its segments.
+                this.mws = Math.max(1, Math.min(this.mws, this.channelUDP.getOption(StandardSocketOptions.SO_RCVBUF)/datagramByteSize-1));
+            }
+            catch (IOException e) 
+            {
+                // Get current line number.
+                int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
+                
+                // Handle exception.
+                this.processException(e, lineNumber);
+            }
+            
+            this.windowScale = MTPHeader.getWindowScale(this.mws);
+            
+            // Log receiver status/event.
+            this.myEventLog.logSegment(EventLog.RECEIVER_RECEIVED_SYN, 0, receivedMTPHeader, receivedMTPHeader.slicePayLoad());
             
             // Set Receiver to connected status.
             this.connected = true;
@@ -145,38 +240,41 @@ public class Receiver {
             receivedMTPHeader.setSequenceNumber(this.sequenceNumber);
             receivedMTPHeader.setAckNumber(this.ackNumber);
             receivedMTPHeader.setACK();
+            receivedMTPHeader.setScaledMWS(this.mws, this.windowScale);
+            
+            // Accept window scaling, the payload is the shift applied to the MWS values sent.
+            ByteBuffer windowScaleOption = ByteBuffer.allocate(MTPHeader.WINDOW_SCALE_BYTE_SIZE);
+            windowScaleOption.put(0, (byte)this.windowScale);
+            receivedMTPHeader.setPayloadByteLength(MTPHeader.WINDOW_SCALE_BYTE_SIZE);
             
             // Send back SYNACK segment.
-            this.sendMTPSegment(receivedHeaderBits, null);
-            
-            // Output sender status/event to text log file.
-            this.receiverLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-            this.receiverLogWriter.print("\nEVENT: SENT SYN ACK segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-            this.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                        +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                        +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                        +", Len="+receivedMTPHeader.getPayloadByteLength());
-            this.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-            this.receiverLogWriter.flush();
-            
-            // Create Text file to hold text data.
-            try {
-                this.myPrintWriter = new PrintWriter(this.FILENAME, "UTF-8");
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
+            this.sendMTPSegment(receivedMTPHeader, windowScaleOption);
+            
+            // Log receiver status/event.
+            this.myEventLog.logSegment(EventLog.RECEIVER_SENT_SYN_ACK, 0, receivedMTPHeader, windowScaleOption);
+            
+            // Create the file to hold the data, preallocated to the size of the stream if known.
+            try
+            {
+                RandomAccessFile outputFile = new RandomAccessFile(this.FILENAME, "rw");
+                outputFile.setLength(Math.max(0, this.streamByteSize));
+                this.myFileChannel = outputFile.getChannel();
+                this.ackOffset = 0;
+            }
+            catch (IOException e) 
+            {
+                // Get current line number.
+                int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
+                
+                // Handle exception.
+                this.processException(e, lineNumber);
             }
             
             // Receive final ACK for Connection-Granted segment.
             byteSegment = this.receiveMTPSegment(); 
             
-            // Extract Header.
-            byteSegment = this.myMTPCalculation.extractHeader(byteSegment, this.HEADER_BYTE_SIZE);
-            
-            // Create header BitSet to access bits.
-            receivedHeaderBits = this.myMTPCalculation.fromByteArray(byteSegment);
-            receivedMTPHeader = new MTPHeader(receivedHeaderBits);
+            // Point the header view at the new segment.
+            receivedMTPHeader.wrap(byteSegment);
             
             // Check to see if this is the 3rd segment in the handshake.
             if(!receivedMTPHeader.getSYN() && receivedMTPHeader.getACK())
@@ -184,15 +282,8 @@ public class Receiver {
                 // Check if the segment comes from the correct process.
                 if(this.senderHostPort == receivedMTPHeader.getSRCPort() && this.connected)
                 {   
-                    // Output sender status/event to text log file.
-                    this.receiverLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-                    this.receiverLogWriter.print("\nEVENT: RECEIVED 3rd segment in handshake of Seq: "+receivedMTPHeader.getSequenceNumber());
-                    this.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                +", Len="+receivedMTPHeader.getPayloadByteLength());
-                    this.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-                    this.receiverLogWriter.flush();
+                    // Log receiver status/event.
+                    this.myEventLog.logSegment(EventLog.RECEIVER_RECEIVED_HANDSHAKE_ACK, 0, receivedMTPHeader, null);
                     
                     // Increase receivers sequence number.
                     this.sequenceNumber = this.myMTPCalculation.getNextSeqNum(this.sequenceNumber, 1);
@@ -202,7 +293,7 @@ public class Receiver {
                     
                 }
             }
-                   
+            
         }
         else
         {   
@@ -218,10 +309,8 @@ public class Receiver {
      */
     public void exchange()
     {   
-        // Output sender status/event to text log file.
-        this.receiverLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-        this.receiverLogWriter.print("\nReady to Transfer Data!");
-        this.receiverLogWriter.flush();
+        // Log receiver status/event.
+        this.myEventLog.log(EventLog.RECEIVER_READY);
         
         // Set up the receivers multi-threading to send and receive at the same time.
         Runnable newReceiverReceive = new ReceiverReceive(this);
@@ -229,6 +318,7 @@ public class Receiver {
         
         Thread thread1 = new Thread(newReceiverReceive);
         Thread thread2 = new Thread(newReceiverSend);
+        this.drainThread = thread2;
         
         // MTP receive protocol is started.
         thread1.start();
@@ -236,37 +326,331 @@ public class Receiver {
     }
     
     /**
-     * Used as a global sending function to send any data the receiver or any dependent
-     * classes might have.
-     * @param aHeaderBitSet BitSet, The set of header bits to send.
-     * @param aBytePayLoad byte[], The byte array of payload data to be sent. 
+     * Writes a segment received in order to the file at its offset and moves the ack past it.
+     * @param aSeqNum Integer, The segments sequence number.
+     * @param aPayLoad ByteBuffer, The segments payload (between position and limit), left as it is.
+     * @return Boolean, False if the segment is no longer the next in order (nothing is written).
      */
-    public void sendMTPSegment(BitSet aHeaderBitSet, byte[] aBytePayLoad)
+    public boolean writeInOrder(int aSeqNum, ByteBuffer aPayLoad)
     {
-        // Convert BitSet header into a byte array;
-        byte[] byteHeader = this.myMTPCalculation.toByteArray(aHeaderBitSet);
+        // Lock thread.
+        this.myLock.lock();
         
-        // Prepare total byte msg.
-        byte[] byteMsg = byteHeader;
+        try
+        {
+            if(aSeqNum != this.ackNumber)
+            {
+                return false;
+            }
+            
+            int length = aPayLoad.remaining();
+            this.writePayLoad(aPayLoad, this.ackOffset);
+            
+            // An out of order copy of it may already be held.
+            this.myReceiveBuffer.remove(this.ackOffset);
+            
+            this.ackNumber = this.myMTPCalculation.getNextSeqNum(aSeqNum, length);
+            this.ackOffset += length;
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes a segment received out of order straight to the file at its offset, the out of order
+     * buffer only remembers the range until the ack reaches it.
+     * @param aSeqNum Integer, The segments sequence number, after the ack.
+     * @param aPayLoad ByteBuffer, The segments payload (between position and limit), left as it is.
+     * @return Boolean, False if the segment is dropped (a duplicate, past the buffer or the ack has passed it).
+     */
+    public boolean writeOutOfOrder(int aSeqNum, ByteBuffer aPayLoad)
+    {
+        // Lock thread.
+        this.myLock.lock();
         
-        // Check if there is a payload.
-        if(aBytePayLoad != null)
+        try
         {
-            // Combine header and payload array into one byte array.
-            byteMsg = this.myMTPCalculation.getFullSegment(byteHeader, aBytePayLoad);
+            if(!this.myMTPCalculation.isSeqAfter(aSeqNum, this.ackNumber))
+            {
+                return false;
+            }
+            
+            // Drop it if it is held already or the sender has overrun the advertised window.
+            long fileOffset = this.ackOffset+this.myMTPCalculation.getSeqDistance(this.ackNumber, aSeqNum);
+            if(!this.myReceiveBuffer.add(this.ackOffset, fileOffset, aPayLoad.remaining()))
+            {
+                return false;
+            }
+            
+            this.writePayLoad(aPayLoad, fileOffset);
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
         }
         
+        return true;
+    }
+    
+    /**
+     * Checks if the segment following the ack is already held out of order, the send thread then
+     * drains it and acks both.
+     * @return Boolean
+     */
+    public boolean isNextBuffered()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            return this.myReceiveBuffer.contains(this.ackOffset);
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Hands over to the send thread, there are buffered segments following the ack to drain.
+     */
+    public void wakeDrain()
+    {
+        this.drainPending = true;
+        LockSupport.unpark(this.drainThread);
+    }
+    
+    /**
+     * Waits on the send thread until the receive thread hands over. Spins for SPIN_NANOS first as
+     * the next gap is often filled within microseconds, then parks so an idle receiver uses no CPU.
+     */
+    public void awaitDrain()
+    {
+        long spinEnd = System.nanoTime()+this.SPIN_NANOS;
+        
+        while(!this.drainPending)
+        {
+            if(System.nanoTime()-spinEnd < 0)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                // Wakes on the hand over's unpark, or spuriously and the loop parks again.
+                LockSupport.park(this);
+            }
+        }
+        
+        this.drainPending = false;
+    }
+    
+    /**
+     * Sends an ack for every byte received in order so far straight away, with the free buffer
+     * space and any SACK blocks. Any delayed ack is sent with it.
+     * @param aEvent Integer, The EventLog code of the ack.
+     */
+    public void acknowledge(int aEvent)
+    {
+        this.acknowledge(aEvent, 0);
+    }
+    
+    /**
+     * Sends an ack for every byte received in order so far straight away, with the free buffer
+     * space and any SACK blocks. Any delayed ack is sent with it.
+     * @param aEvent Integer, The EventLog code of the ack.
+     * @param aValue Integer, A value logged with it (the unexpected sequence number for an unexpected segments ack).
+     */
+    public void acknowledge(int aEvent, int aValue)
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            this.unackedSegments = 0;
+            this.ackTimer.cancel();
+            
+            MTPHeader ackMTPHeader = this.myAckMTPHeader;
+            ackMTPHeader.clear();
+            
+            ackMTPHeader.setACK();
+            ackMTPHeader.setAckNumber(this.ackNumber);
+            ackMTPHeader.setSequenceNumber(this.sequenceNumber);
+            ackMTPHeader.setDestPort(this.senderHostPort);
+            ackMTPHeader.setSRCPort(this.RECEIVER_HOST_PORT);
+            
+            // Advertise the free buffer space.
+            this.setAdvertisedWindow(ackMTPHeader);
+            
+            // Report any out of order data held as SACK blocks.
+            ByteBuffer sackPayLoad = this.getSackPayLoad(this.myAckSack);
+            ackMTPHeader.setPayloadByteLength( (sackPayLoad == null) ? 0 : sackPayLoad.remaining() );
+            
+            // Send Ack to sender.
+            this.sendMTPSegment(ackMTPHeader, sackPayLoad);
+            
+            // Log receiver status/event.
+            this.myEventLog.logSegment(aEvent, aValue, ackMTPHeader, sackPayLoad);
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Acks an in order segment, coalescing acks: every ACK_EVERY segments, or after the ack delay.
+     * While out of order data is held the ack is sent straight away, so the sender sees the gap.
+     * @param aEvent Integer, The EventLog code of the ack if it is sent now.
+     */
+    public void acknowledgeInOrder(int aEvent)
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            this.unackedSegments++;
+            
+            if( (this.unackedSegments >= this.ACK_EVERY) || (!this.myReceiveBuffer.isEmpty()) )
+            {
+                this.acknowledge(aEvent);
+            }
+            else if(this.unackedSegments == 1)
+            {
+                // First segment held back, it waits no longer than the delay.
+                this.ackTimer.arm(this.ACK_DELAY_MILLIS);
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Sends the delayed ack once the ack delay has passed, if it hasn't been sent since.
+     */
+    public void sendDelayedAck()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            if(this.unackedSegments > 0)
+            {
+                this.acknowledge(EventLog.RECEIVER_SENT_DELAYED_ACK);
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Sets the window an ack advertises, in segments, measured from the cumulative ack. Out of order
+     * data is already counted in flight by the sender, so the window is not reduced by it: it is
+     * the out of order buffer, or less if the socket can't hold that many segments while a write
+     * to the file holds up the receive thread.
+     * @param aHeader MTPHeader, The ack header.
+     */
+    public void setAdvertisedWindow(MTPHeader aHeader)
+    {
+        aHeader.setScaledMWS(this.mws, this.windowScale);
+    }
+    
+    /**
+     * Gets the SACK blocks for an ack: the ranges held in the out of order buffer beyond the
+     * cumulative ack, lowest first (the holes the sender should fill next), merged where they
+     * touch.
+     * @param aSack MTPSack, The callers re-usable SACK holder, filled with the blocks.
+     * @return ByteBuffer, The encoded blocks to send as the ack payload, or null if there are none.
+     */
+    public ByteBuffer getSackPayLoad(MTPSack aSack)
+    {
+        aSack.clear();
+        
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            if(this.myReceiveBuffer.isEmpty())
+            {
+                return null;
+            }
+            
+            // Walk the ranges held, from the ack up.
+            long start = this.myReceiveBuffer.findRangeStart(this.ackOffset);
+            while(start >= 0)
+            {
+                long end = this.myReceiveBuffer.findRangeEnd(start);
+                
+                int startSeqNum = this.myMTPCalculation.getNextSeqNum(this.ackNumber, (int)(start-this.ackOffset));
+                int endSeqNum = this.myMTPCalculation.getNextSeqNum(this.ackNumber, (int)(end-this.ackOffset));
+                
+                if(!aSack.add(startSeqNum, endSeqNum))
+                {
+                    break;
+                }
+                
+                start = this.myReceiveBuffer.findRangeStart(end);
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+        
+        return aSack.encode();
+    }
+    
+    /**
+     * Used as a global sending function to send any data the receiver or any dependent
+     * classes might have.
+     * @param aHeader MTPHeader, The header to send.
+     * @param aPayLoad ByteBuffer, The payload data to be sent (between position and limit), or null. 
+     */
+    public void sendMTPSegment(MTPHeader aHeader, ByteBuffer aPayLoad)
+    {
+        // The header and payload buffers are written as they are with one gathering write,
+        // their positions are put back afterwards.
+        ByteBuffer headerBuffer = aHeader.getByteBuffer();
+        int headerPosition = headerBuffer.position();
+        int headerLimit = headerBuffer.limit();
+        int payLoadPosition = 0;
+        
+        // Lock thread.
+        this.myLock.lock();
+        
         // Attempting to send segment.
         try 
         {   
-            // Create IP Address reference for segment preparation.
-            InetAddress destIP = InetAddress.getByName(this.CLIENT_HOST_IP);
+            headerBuffer.limit(this.HEADER_BYTE_SIZE);
+            headerBuffer.position(0);
+            this.mySegmentBuffers[0] = headerBuffer;
             
-            // Make actual UDP segment.
-            DatagramPacket newUDPSegment = new DatagramPacket(byteMsg, byteMsg.length, destIP, this.senderHostPort);
-            
-            // Send UDP segment.
-            this.socketUDP.send(newUDPSegment);
+            // Check if there is a payload.
+            if(aPayLoad != null)
+            {
+                payLoadPosition = aPayLoad.position();
+                this.mySegmentBuffers[1] = aPayLoad;
+                
+                // Send header and payload as one UDP segment.
+                this.channelUDP.write(this.mySegmentBuffers, 0, 2);
+            }
+            else
+            {
+                // Send UDP segment.
+                this.channelUDP.write(this.mySegmentBuffers, 0, 1);
+            }
         }
         catch (IOException e) 
         {
@@ -275,6 +659,19 @@ public class Receiver {
             
             // Handle exception.
             this.processException(e, lineNumber);
+            
+        } finally {
+            // Put the buffers back as they were.
+            headerBuffer.limit(headerLimit);
+            headerBuffer.position(headerPosition);
+            if(aPayLoad != null)
+            {
+                aPayLoad.position(payLoadPosition);
+            }
+            this.mySegmentBuffers[1] = null;
+            
+            // Unlock thread.
+            this.myLock.unlock();
         }
         
     }
@@ -282,21 +679,23 @@ public class Receiver {
     /**
      * Used as a global receiving function to receive any data the receiver or any dependent
      * classes might have.
-     * @return byte[], The segment byte array received. 
+     * @return ByteBuffer, The received segment in a pooled buffer, give it back with releaseMTPSegment(). 
      */
-    public byte[] receiveMTPSegment()
+    public ByteBuffer receiveMTPSegment()
     {   
         // Attempt to receive.
         try
         {   
-            // Create a datagram packet to hold incoming UDP packets.
-            DatagramPacket requestStore = new DatagramPacket(new byte[this.HEADER_BYTE_SIZE+this.mss], this.HEADER_BYTE_SIZE+this.mss);
-            
-            // Receive/Listen for packet.
-            this.socketUDP.receive(requestStore);
+            // Take a buffer to hold incoming UDP packets.
+            ByteBuffer byteSegment = this.myBufferPool.acquire();
             
-            // Get byte array from transmitted data.
-            byte[] byteSegment = requestStore.getData();
+            // Receive/Listen for packet, remembering where it came from until connected.
+            SocketAddress sourceAddress = this.channelUDP.receive(byteSegment);
+            if(!this.channelUDP.isConnected())
+            {
+                this.senderAddress = sourceAddress;
+            }
+            byteSegment.flip();
             
             return byteSegment;
         }
@@ -313,13 +712,42 @@ public class Receiver {
     }
     
     /**
-     * Used to get the current amount of milliseconds that have elapsed since the start of the
-     * program.
-     * @return Long, The number of ms passed.
+     * Writes a payload to the file at an offset, the raw bytes as they were received.
+     * @param aPayLoad ByteBuffer, The payload (between position and limit), its position is put back.
+     * @param aFileOffset Long, The file offset of its first byte.
+     */
+    private void writePayLoad(ByteBuffer aPayLoad, long aFileOffset)
+    {
+        int payLoadPosition = aPayLoad.position();
+        
+        try
+        {
+            long fileOffset = aFileOffset;
+            while(aPayLoad.hasRemaining())
+            {
+                fileOffset += this.myFileChannel.write(aPayLoad, fileOffset);
+            }
+        }
+        catch (IOException e) 
+        {
+            // Get current line number.
+            int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
+            
+            // Handle exception.
+            this.processException(e, lineNumber);
+            
+        } finally {
+            aPayLoad.position(payLoadPosition);
+        }
+    }
+    
+    /**
+     * Gives a received segments buffer back to the pool once its payload has been written or dropped.
+     * @param aByteSegment ByteBuffer, A segment from receiveMTPSegment(), not to be used after.
      */
-    public long getCurrentSeconds()
+    public void releaseMTPSegment(ByteBuffer aByteSegment)
     {
-        return (System.currentTimeMillis() - this.startingSystemTime);
+        this.myBufferPool.release(aByteSegment);
     }
     
     /**
@@ -344,5 +772,5 @@ public class Receiver {
         // System exit.
         System.exit(0);
     }
-    
+
 }
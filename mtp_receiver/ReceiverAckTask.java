@@ -0,0 +1,32 @@
+/**
+ * Class serves as the receivers delayed ack, run by the ack timer when an in order segment has
+ * waited the ack delay without a second segment arriving to be acked with it.
+ * @author Charbel Zeaiter
+ */
+public class ReceiverAckTask implements Runnable{
+    
+    // Class Fields /////////////////////////////////////////////////
+    private Receiver myReceiver;
+    
+    // Class Constuctor /////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aReceiver Receiver, A reference to the 'global' receiver object to update/get values from.
+     */
+    public ReceiverAckTask(Receiver aReceiver)
+    {
+        this.myReceiver = aReceiver;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Ack timer thread.
+     */
+    public void run()
+    {
+        this.myReceiver.sendDelayedAck();
+    }
+    
+}
@@ -1,4 +1,4 @@
-import java.util.BitSet;
+import java.nio.ByteBuffer;
 
 /**
  * This Class performs all the receivers 'receive' functions running within its own thread.
@@ -8,6 +8,7 @@ public class ReceiverReceive implements Runnable {
     
     // Class Fields /////////////////////////////////////////////////
     private Receiver myReceiver;
+    private MTPHeader myReceivedMTPHeader;
     
     // Class Constructor ////////////////////////////////////////////
     
@@ -18,6 +19,7 @@ public class ReceiverReceive implements Runnable {
     public ReceiverReceive(Receiver aReceiver)
     {
         this.myReceiver = aReceiver;
+        this.myReceivedMTPHeader = new MTPHeader();
     }
     
     // Class Methods ////////////////////////////////////////////////
@@ -27,46 +29,23 @@ public class ReceiverReceive implements Runnable {
      */
     public void run()
     {   
-        // While the receiver is connected to the sender.
+        // While the receiver is connected to the sender. Segments are processed back to back, the
+        // receive returns straight away while any are queued on the socket and the sender is held
+        // back by the advertised window, not by this thread sleeping.
         while(myReceiver.connected)
         {   
             // Listen for segments.
-            byte[] byteSegment = this.myReceiver.receiveMTPSegment();
+            ByteBuffer byteSegment = this.myReceiver.receiveMTPSegment();
             
-            // Extract header.
-            byte[] headerPart = this.myReceiver.myMTPCalculation.extractHeader(byteSegment, this.myReceiver.HEADER_BYTE_SIZE);
+            // Point the re-usable header view at the received segment.
+            MTPHeader receivedMTPHeader = this.myReceivedMTPHeader.wrap(byteSegment);
             
-            // Convert header into BitSet to access bits.
-            BitSet receivedHeaderBits = this.myReceiver.myMTPCalculation.fromByteArray(headerPart);
-            MTPHeader receivedMTPHeader = new MTPHeader(receivedHeaderBits);
+            // View the payload in place.
+            ByteBuffer payLoadPart = receivedMTPHeader.slicePayLoad();
+            int numberOfBytes = payLoadPart.remaining();
             
-            // Extract payload.
-            int payLoadByteSize = receivedMTPHeader.getPayloadByteLength();
-            byte[] payLoadPart = this.myReceiver.myMTPCalculation.extractPayLoad(byteSegment, this.myReceiver.HEADER_BYTE_SIZE, payLoadByteSize);
-            int numberOfBytes = payLoadPart.length;
-            
-            // Convert byte payload to string.
-            String payload = new String(payLoadPart);
-            
-            // Thread, lock next block of code.
-            this.myReceiver.myLock.lock();
-            
-            try
-            {
-                // Output sender status/event to text log file.
-                this.myReceiver.receiverLogWriter.print("\n\nTIME: "+this.myReceiver.getCurrentSeconds()+"ms");
-                this.myReceiver.receiverLogWriter.print("\nEVENT: RECEIVED Data Segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-                this.myReceiver.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                            +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                            +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                            +", Len="+receivedMTPHeader.getPayloadByteLength());
-                this.myReceiver.receiverLogWriter.print("\nPAYLOAD: "+new String(payLoadPart));
-                this.myReceiver.receiverLogWriter.flush();
-            
-            } finally {
-                // Unlock thread.
-                this.myReceiver.myLock.unlock();
-            }
+            // Log receiver status/event.
+            this.myReceiver.myEventLog.logData(EventLog.RECEIVER_RECEIVED_SEGMENT, receivedMTPHeader, payLoadPart);
             
             // Check if the received port is the correct one that was connected to previously.
             if(receivedMTPHeader.getSRCPort() == myReceiver.senderHostPort)
@@ -88,201 +67,50 @@ public class ReceiverReceive implements Runnable {
                     //System.out.println("-------------- Payload Byte length: "+numberOfBytes);
                     //System.out.println("'"+payload+"'");
                     
-                    // Write payload in received segment to the created file.
-                    this.myReceiver.myPrintWriter.print(payload);
-                    this.myReceiver.myPrintWriter.flush();
+                    // Write payload in received segment to the created file, this updates our new expected ack value.
+                    boolean written = this.myReceiver.writeInOrder(currentIncommingSeqNum, payLoadPart);
                     
-                    // Check the buffer to see if we should wait. So that segments we already have in the buffer can be ACK-ed
-                    // instead of sending more requests for segments that we already have.
-                    QueueFour newQueueFour = this.myReceiver.myReceiveBuffer.peek();
-                    
-                    // Check if buffer is empty.
-                    if(newQueueFour != null)
-                    {   
-                        // Get stored sequence number.
-                        int storedSeqNum = newQueueFour.getSequenceNumber();
-                        
-                        // Get next ack number value.
-                        int newAckNum = this.myReceiver.myMTPCalculation.getNextSeqNum(receivedMTPHeader.getSequenceNumber(), numberOfBytes);
-                        
-                        // Update our new expected ack value.
-                        this.myReceiver.ackNumber = newAckNum;
+                    if(!written)
+                    {
+                        // The send thread drained past it meanwhile, ack it as a duplicate.
+                        this.myReceiver.acknowledge(EventLog.RECEIVER_SENT_ACK);
+                    }
+                    else if(this.myReceiver.isNextBuffered())
+                    {
+                        // Check the buffer to see if we should wait. So that segments we already have in the buffer can be ACK-ed
+                        // instead of sending more requests for segments that we already have.
+                        this.myReceiver.wakeDrain();
                         
-                        // Check to see if the stored sequence number matches our expected ack value.
-                        if(newAckNum == storedSeqNum)
-                        {
-                            // Testing purposes only.
-                            //System.out.println("-Stored sequence number match next ack number...Waiting for 'ReceiverSend' to process!");
-                        }
-                        else
-                        {   
-                            // No match in buffer detected, so we send an ack for the immediate segment.
-                            
-                            // Recycling received header to be used for MTP ACK.
-                            receivedMTPHeader.setACK();
-                            receivedMTPHeader.setAckNumber(newAckNum);
-                            receivedMTPHeader.setSequenceNumber(myReceiver.sequenceNumber);
-                            receivedMTPHeader.setDestPort(myReceiver.senderHostPort);
-                            receivedMTPHeader.setSRCPort(myReceiver.RECEIVER_HOST_PORT);
-                            receivedMTPHeader.setPayloadByteLength(0);
-                            
-                            // Send Ack to sender.
-                            myReceiver.sendMTPSegment(receivedHeaderBits, null);
-                            
-                            // Thread, lock next block of code.
-                            this.myReceiver.myLock.lock();
-                            
-                            try
-                            {
-                                // Output sender status/event to text log file.
-                                this.myReceiver.receiverLogWriter.print("\n\nTIME: "+this.myReceiver.getCurrentSeconds()+"ms");
-                                this.myReceiver.receiverLogWriter.print("\nEVENT: SENT ACK of Seq: "+receivedMTPHeader.getSequenceNumber());
-                                this.myReceiver.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                            +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                            +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                            +", Len="+receivedMTPHeader.getPayloadByteLength());
-                                this.myReceiver.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-                                this.myReceiver.receiverLogWriter.flush();
-                            
-                            } finally {
-                                // Unlock thread.
-                                this.myReceiver.myLock.unlock();
-                            }
-                            
-                        }
-
+                        // Testing purposes only.
+                        //System.out.println("-Stored sequence number match next ack number...Waiting for 'ReceiverSend' to process!");
                     }
                     else
                     {
-                        // Nothing in buffer to we ack the segment straight away.
-                        
-                        // Send Ack to sender.
-                        myReceiver.sendMTPSegment(receivedHeaderBits, null);
-                        
-                        // Recycling received header to be used for MTP ACK.
-                        receivedMTPHeader.setACK();
-                        int newAckNum = this.myReceiver.myMTPCalculation.getNextSeqNum(receivedMTPHeader.getSequenceNumber(), numberOfBytes);
-                        receivedMTPHeader.setAckNumber(newAckNum);
-                        receivedMTPHeader.setSequenceNumber(myReceiver.sequenceNumber);
-                        receivedMTPHeader.setDestPort(myReceiver.senderHostPort);
-                        receivedMTPHeader.setSRCPort(myReceiver.RECEIVER_HOST_PORT);
-                        receivedMTPHeader.setPayloadByteLength(0);
-                        
-                        // Send Ack to sender.
-                        myReceiver.sendMTPSegment(receivedHeaderBits, null);
-                        
-                        // Update ack number for new expected sequence number.
-                        this.myReceiver.ackNumber = newAckNum;
-                        
-                        // Thread, lock next block of code.
-                        this.myReceiver.myLock.lock();
-                        
-                        try
-                        {
-                            // Output sender status/event to text log file.
-                            this.myReceiver.receiverLogWriter.print("\n\nTIME: "+this.myReceiver.getCurrentSeconds()+"ms");
-                            this.myReceiver.receiverLogWriter.print("\nEVENT: SENT ACK of Seq: "+receivedMTPHeader.getSequenceNumber());
-                            this.myReceiver.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                        +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                        +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                        +", Len="+receivedMTPHeader.getPayloadByteLength());
-                            this.myReceiver.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-                            this.myReceiver.receiverLogWriter.flush();
-                        
-                        } finally {
-                            // Unlock thread.
-                            this.myReceiver.myLock.unlock();
-                        }
-                        
-                    }  
+                        // Ack the segment, coalesced with the next one unless out of order data is held.
+                        this.myReceiver.acknowledgeInOrder(EventLog.RECEIVER_SENT_ACK);
+                    }
                     
                 }
-                else if(currentIncommingSeqNum > expectedIncommingSeqNum)
+                else if(this.myReceiver.myMTPCalculation.isSeqAfter(currentIncommingSeqNum, expectedIncommingSeqNum))
                 {   
                     // Current sequence number is greater than expeced sequence number
-                    // so it must be out of order. Therefore buffer.
-                    
-                    // Create a new buffer object and add to buffer.
-                    QueueFour newQueueTriple = new QueueFour(currentIncommingSeqNum, receivedHeaderBits, payload, numberOfBytes);
-                    myReceiver.myReceiveBuffer.add(newQueueTriple);
-                    
-                    // Recycling received header to be used for MTP ACK.
-                    receivedMTPHeader.setACK();
-                    receivedMTPHeader.setAckNumber(expectedIncommingSeqNum);
-                    receivedMTPHeader.setSequenceNumber(myReceiver.sequenceNumber);
-                    receivedMTPHeader.setDestPort(myReceiver.senderHostPort);
-                    receivedMTPHeader.setSRCPort(myReceiver.RECEIVER_HOST_PORT);
-                    receivedMTPHeader.setPayloadByteLength(0);
-                    
-                    // Send the same ack back as before.
-                    myReceiver.sendMTPSegment(receivedHeaderBits, null);
-                    
-                    // Thread, lock next block of code.
-                    this.myReceiver.myLock.lock();
-                    
-                    try
-                    {
-                        // Output sender status/event to text log file.
-                        this.myReceiver.receiverLogWriter.print("\n\nTIME: "+this.myReceiver.getCurrentSeconds()+"ms");
-                        this.myReceiver.receiverLogWriter.print("\nEVENT: NOT EXPECTING Sequence number: "+currentIncommingSeqNum+", SENT ACK for expected sequence number in segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-                        this.myReceiver.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                    +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                    +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                    +", Len="+receivedMTPHeader.getPayloadByteLength());
-                        this.myReceiver.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-                        this.myReceiver.receiverLogWriter.flush();
+                    // so it must be out of order. Therefore write it at its offset and buffer its range.
+                    this.myReceiver.writeOutOfOrder(currentIncommingSeqNum, payLoadPart);
                     
-                    } finally {
-                        // Unlock thread.
-                        this.myReceiver.myLock.unlock();
-                    }
+                    // A gap, send the same ack back as before straight away.
+                    this.myReceiver.acknowledge(EventLog.RECEIVER_SENT_UNEXPECTED_ACK, currentIncommingSeqNum);
                     
                 }
-                else if(currentIncommingSeqNum < expectedIncommingSeqNum)
+                else if(this.myReceiver.myMTPCalculation.isSeqBefore(currentIncommingSeqNum, expectedIncommingSeqNum))
                 {   
-                    // Send back need sequence number.
-                    
-                    // Recycling received header to be used for MTP ACK.
-                    receivedMTPHeader.setACK();
-                    receivedMTPHeader.setAckNumber(expectedIncommingSeqNum);
-                    receivedMTPHeader.setSequenceNumber(myReceiver.sequenceNumber);
-                    receivedMTPHeader.setDestPort(myReceiver.senderHostPort);
-                    receivedMTPHeader.setSRCPort(myReceiver.RECEIVER_HOST_PORT);
-                    receivedMTPHeader.setPayloadByteLength(0);
-                    
-                    // Send Ack to sender.
-                    myReceiver.sendMTPSegment(receivedHeaderBits, null);
-                    
-                    // Thread, lock next block of code.
-                    this.myReceiver.myLock.lock();
-                    
-                    try
-                    {
-                        // Output sender status/event to text log file.
-                        this.myReceiver.receiverLogWriter.print("\n\nTIME: "+this.myReceiver.getCurrentSeconds()+"ms");
-                        this.myReceiver.receiverLogWriter.print("\nEVENT: SENT ACK of Seq: "+receivedMTPHeader.getSequenceNumber());
-                        this.myReceiver.receiverLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                    +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                    +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                    +", Len="+receivedMTPHeader.getPayloadByteLength());
-                        this.myReceiver.receiverLogWriter.print("\nPAYLOAD: NO DATA");
-                        this.myReceiver.receiverLogWriter.flush();
-                    
-                    } finally {
-                        // Unlock thread.
-                        this.myReceiver.myLock.unlock();
-                    }
+                    // Send back need sequence number straight away.
+                    this.myReceiver.acknowledge(EventLog.RECEIVER_SENT_ACK);
                 }
                 
             }
             
-            // Force receive algorithm to hand over thread execution to send algorthim.
-            try 
-            {
-                Thread.sleep(2);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            // The payload has been written or dropped, the buffer can take the next segment.
+            this.myReceiver.releaseMTPSegment(byteSegment);
             
         }
         
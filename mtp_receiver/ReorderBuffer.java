@@ -0,0 +1,221 @@
+/**
+ * This Class holds the receivers out of order segments, indexed by their file offset. Every segment
+ * but the last of the stream carries a full MSS, so a segments slot in the ring is its offset divided
+ * by the MSS and inserting, finding a duplicate or draining the next in order segment is O(1). The
+ * payloads are already written to the file at their offsets, a slot only holds its segments length.
+ * Offsets are only accepted up to the buffer size past the ack, which bounds the ring by the window
+ * the receiver advertises.
+ * Not thread safe, callers hold the receivers lock.
+ * @author Charbel Zeaiter
+ */
+public class ReorderBuffer {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    // The ring starts no larger than this and grows as needed.
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+    
+    private int segmentSize;
+    private long capacityBytes;
+    private int[] lengths;
+    private int mask;
+    private int count;
+    private long endOffset;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aSegmentSize Integer, The MSS every segment but the last is filled to.
+     * @param aCapacityBytes Integer, How far past the ack (in bytes) a segment may end.
+     */
+    public ReorderBuffer(int aSegmentSize, int aCapacityBytes)
+    {
+        this.segmentSize = Math.max(1, aSegmentSize);
+        this.capacityBytes = aCapacityBytes;
+        
+        // Ring size is a power of two so slots wrap with a mask.
+        long maxSegments = (this.capacityBytes+this.segmentSize-1)/this.segmentSize;
+        int capacity = 1;
+        while( (capacity < maxSegments) && (capacity < MAX_INITIAL_CAPACITY) )
+        {
+            capacity = capacity*2;
+        }
+        
+        this.lengths = new int[capacity];
+        this.mask = capacity-1;
+        this.count = 0;
+        this.endOffset = 0;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Adds an out of order segment.
+     * @param aAckOffset Long, The file offset the ack has reached.
+     * @param aOffset Long, The segments file offset, after the ack.
+     * @param aLength Integer, The segments length.
+     * @return Boolean, False if it is a duplicate, not on a segment boundary or past the buffer (it isn't added).
+     */
+    public boolean add(long aAckOffset, long aOffset, int aLength)
+    {
+        if( (aOffset <= aAckOffset) || (aOffset%this.segmentSize != 0) || (aLength <= 0)
+            || (aOffset+aLength-aAckOffset > this.capacityBytes) )
+        {
+            return false;
+        }
+        
+        // Grow until both the ack and the segment fit in the ring.
+        long index = aOffset/this.segmentSize;
+        while(index-aAckOffset/this.segmentSize >= this.lengths.length)
+        {
+            this.grow(aAckOffset);
+        }
+        
+        int slot = (int)(index & this.mask);
+        if(this.lengths[slot] != 0)
+        {
+            return false;
+        }
+        
+        this.lengths[slot] = aLength;
+        this.count++;
+        this.endOffset = Math.max(this.endOffset, aOffset+aLength);
+        
+        return true;
+    }
+    
+    /**
+     * Removes the segment at an offset if it is held, when a copy of it has arrived in order.
+     * @param aOffset Long, A segment boundary.
+     */
+    public void remove(long aOffset)
+    {
+        int slot = (int)((aOffset/this.segmentSize) & this.mask);
+        
+        if( (this.count > 0) && (aOffset%this.segmentSize == 0) && (this.lengths[slot] != 0) )
+        {
+            this.lengths[slot] = 0;
+            this.count--;
+        }
+    }
+    
+    /**
+     * Removes the segments that follow on in order from the ack.
+     * @param aAckOffset Long, The file offset the ack has reached.
+     * @return Integer, The number of bytes removed, the ack moves past them.
+     */
+    public int drain(long aAckOffset)
+    {
+        long offset = aAckOffset;
+        
+        while( (this.count > 0) && (offset%this.segmentSize == 0) )
+        {
+            int slot = (int)((offset/this.segmentSize) & this.mask);
+            int length = this.lengths[slot];
+            
+            if(length == 0)
+            {
+                break;
+            }
+            
+            this.lengths[slot] = 0;
+            this.count--;
+            offset += length;
+        }
+        
+        return (int)(offset-aAckOffset);
+    }
+    
+    /**
+     * Checks if the segment at an offset is held.
+     * @param aOffset Long, A file offset.
+     * @return Boolean
+     */
+    public boolean contains(long aOffset)
+    {
+        return (this.count > 0) && (aOffset%this.segmentSize == 0)
+               && (this.lengths[(int)((aOffset/this.segmentSize) & this.mask)] != 0);
+    }
+    
+    /**
+     * Finds the start of the next range held, for SACK blocks.
+     * @param aFromOffset Long, The file offset to search from, at or after the ack.
+     * @return Long, The file offset of the first segment held at or after it, or -1 if none is.
+     */
+    public long findRangeStart(long aFromOffset)
+    {
+        if(this.count == 0)
+        {
+            return -1;
+        }
+        
+        // Search from the first segment boundary.
+        long firstOffset = ((aFromOffset+this.segmentSize-1)/this.segmentSize)*this.segmentSize;
+        
+        for(long offset=firstOffset;offset<this.endOffset;offset+=this.segmentSize)
+        {
+            if(this.lengths[(int)((offset/this.segmentSize) & this.mask)] != 0)
+            {
+                return offset;
+            }
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Finds the end of a range held.
+     * @param aStartOffset Long, The file offset of a segment held.
+     * @return Long, The file offset following the last segment held in a row from it.
+     */
+    public long findRangeEnd(long aStartOffset)
+    {
+        long offset = aStartOffset;
+        
+        while(offset%this.segmentSize == 0)
+        {
+            int length = this.lengths[(int)((offset/this.segmentSize) & this.mask)];
+            
+            if( (length == 0) || (offset >= this.endOffset) )
+            {
+                break;
+            }
+            
+            offset += length;
+        }
+        
+        return offset;
+    }
+    
+    /**
+     * Checks if any segments are held.
+     * @return Boolean
+     */
+    public boolean isEmpty()
+    {
+        return this.count == 0;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Doubles the ring, keeping every segment held (all lie within a ring length of the ack).
+     * @param aAckOffset Long, The file offset the ack has reached.
+     */
+    private void grow(long aAckOffset)
+    {
+        int[] newLengths = new int[this.lengths.length*2];
+        int newMask = newLengths.length-1;
+        long firstIndex = aAckOffset/this.segmentSize;
+        
+        for(long index=firstIndex;index<firstIndex+this.lengths.length;index++)
+        {
+            newLengths[(int)(index & newMask)] = this.lengths[(int)(index & this.mask)];
+        }
+        
+        this.lengths = newLengths;
+        this.mask = newMask;
+    }
+
+}
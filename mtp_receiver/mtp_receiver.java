@@ -7,14 +7,33 @@ public class mtp_receiver {
     
     public static void main(String[] args)
     {    
-        if(args.length == 2)
+        if( (args.length >= 2) && (args.length <= 7) )
         {
             // Extract parameters from terminal arguments.
             int receiverPort = Integer.parseInt(args[0]);
             String filename = args[1];
+            int bufferByteSize = (args.length >= 3) ? Integer.parseInt(args[2]) : Receiver.BUFFER_MATCH_SENDER;
+            int ackEvery = (args.length >= 4) ? Integer.parseInt(args[3]) : Receiver.DEFAULT_ACK_EVERY;
+            long ackDelayMillis = (args.length >= 5) ? Long.parseLong(args[4]) : Receiver.DEFAULT_ACK_DELAY_MILLIS;
+            long spinMicros = (args.length >= 6) ? Long.parseLong(args[5]) : Receiver.DEFAULT_SPIN_MICROS;
+            int logCaptureBytes = (args.length == 7) ? Integer.parseInt(args[6]) : EventLog.NO_PAYLOAD_CAPTURE;
+            
+            if( (ackEvery < 1) || (ackDelayMillis < 0) || (spinMicros < 0) )
+            {
+                // Exit program.
+                System.out.println("Ack every must be at least 1, the ack delay and spin can't be negative");
+                System.exit(0);
+            }
+            
+            if( (logCaptureBytes < 0) || (logCaptureBytes > EventLog.MAX_CAPTURE_BYTE_SIZE) )
+            {
+                // Exit program.
+                System.out.println("Log capture must be between 0 and "+EventLog.MAX_CAPTURE_BYTE_SIZE+" bytes");
+                System.exit(0);
+            }
             
             // Launch receiver.
-            Receiver newReceiver = new Receiver(receiverPort, filename);
+            Receiver newReceiver = new Receiver(receiverPort, filename, bufferByteSize, ackEvery, ackDelayMillis, spinMicros, logCaptureBytes);
             
             // Perform receiver actions.
             newReceiver.handShakeReceive();
@@ -0,0 +1,60 @@
+/**
+ * Interface for the senders congestion control. The controller is told about acks, duplicate
+ * acks, fast recovery and timeouts and supplies the congestion window, the sender keeps the
+ * bytes in flight below min(congestion window, receiver window). The sender runs fast recovery
+ * (NewReno, RFC 6582): it starts at a fast retransmit and ends once everything in flight at that
+ * point has been acked.
+ * Events are delivered under the senders lock, the window may be read without it.
+ * @author Charbel Zeaiter
+ */
+public interface CongestionControl {
+    
+    /**
+     * Called when an ack acknowledges new data outside fast recovery.
+     * @param aAckedBytes Integer, The number of newly acked bytes.
+     * @param aSRTTMicros Long, The smoothed round trip time, 0 before the first sample.
+     */
+    public void onAck(int aAckedBytes, long aSRTTMicros);
+    
+    /**
+     * Called for every duplicate ack.
+     */
+    public void onDuplicateAck();
+    
+    /**
+     * Called when a fast retransmit starts fast recovery.
+     * @param aFlightBytes Integer, The number of bytes in flight.
+     */
+    public void onFastRetransmit(int aFlightBytes);
+    
+    /**
+     * Called when an ack in fast recovery acknowledges new data but not the recovery point.
+     * @param aAckedBytes Integer, The number of newly acked bytes.
+     */
+    public void onPartialAck(int aAckedBytes);
+    
+    /**
+     * Called when the recovery point is acked and fast recovery ends.
+     * @param aFlightBytes Integer, The number of bytes still in flight.
+     */
+    public void onRecoveryComplete(int aFlightBytes);
+    
+    /**
+     * Called when the retransmission timer expires.
+     * @param aFlightBytes Integer, The number of bytes in flight.
+     */
+    public void onTimeout(int aFlightBytes);
+    
+    /**
+     * Checks if the window is in slow start (below the slow start threshold).
+     * @return Boolean
+     */
+    public boolean isInSlowStart();
+    
+    /**
+     * Gets the congestion window.
+     * @return Integer, The window in bytes.
+     */
+    public int getCongestionWindow();
+    
+}
@@ -0,0 +1,102 @@
+/**
+ * CUBIC congestion control (RFC 9438). Slow start and fast recovery are as in Reno, but a loss
+ * only reduces the window to 70% and congestion avoidance grows it along a cubic curve of the
+ * time since the loss, flattening out around the window the loss happened at (W_max). The window
+ * never grows slower than Reno would (the Reno friendly region).
+ * @author Charbel Zeaiter
+ */
+public class CubicCongestionControl extends RenoCongestionControl {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    // Cubic scaling constant and multiplicative decrease factor.
+    private static final double C = 0.4;
+    private static final double BETA = 0.7;
+    private static final double ALPHA = 3*(1-BETA)/(1+BETA);
+    
+    // Used as the round trip time until the first sample.
+    private static final long DEFAULT_RTT_MICROS = 100000;
+    
+    // All in segments.
+    private double maxWindowAtLoss;
+    private double k;
+    private double renoWindowEstimate;
+    private long epochStartNanos;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aMSS Integer, The maximum segment size.
+     * @param aMaxWindow Integer, The largest useful window in bytes (the window never grows past it).
+     */
+    public CubicCongestionControl(int aMSS, int aMaxWindow)
+    {
+        super(aMSS, aMaxWindow);
+        this.maxWindowAtLoss = 0;
+        this.epochStartNanos = 0;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    @Override
+    protected void congestionAvoidance(int aAckedBytes, long aSRTTMicros)
+    {
+        long now = System.nanoTime();
+        double window = (double)this.congestionWindow/this.mss;
+        double ackedSegments = (double)aAckedBytes/this.mss;
+        
+        // Start a new epoch on the first ack in congestion avoidance after a loss.
+        if(this.epochStartNanos == 0)
+        {
+            this.epochStartNanos = now;
+            if(window < this.maxWindowAtLoss)
+            {
+                this.k = Math.cbrt((this.maxWindowAtLoss-window)/C);
+            }
+            else
+            {
+                this.k = 0;
+                this.maxWindowAtLoss = window;
+            }
+            this.renoWindowEstimate = window;
+        }
+        
+        // Where the cubic curve is one round trip from now.
+        long rttMicros = (aSRTTMicros > 0) ? aSRTTMicros : DEFAULT_RTT_MICROS;
+        double t = (now-this.epochStartNanos)/1e9+rttMicros/1e6;
+        double target = C*Math.pow(t-this.k, 3)+this.maxWindowAtLoss;
+        
+        // Never grow slower than Reno.
+        this.renoWindowEstimate += ALPHA*ackedSegments/window;
+        target = Math.max(target, this.renoWindowEstimate);
+        
+        // Grow towards the target, by at most half the window per round trip.
+        target = Math.min(target, 1.5*window);
+        if(target > window)
+        {
+            int increase = (int)((target-window)/window*ackedSegments*this.mss);
+            this.setCongestionWindow(this.congestionWindow+Math.max(increase, 1));
+        }
+    }
+    
+    @Override
+    protected int getReducedThreshold(int aFlightBytes)
+    {
+        double window = (double)this.congestionWindow/this.mss;
+        
+        // Fast convergence, release bandwidth sooner if the window is shrinking between losses.
+        if(window < this.maxWindowAtLoss)
+        {
+            this.maxWindowAtLoss = window*(1+BETA)/2;
+        }
+        else
+        {
+            this.maxWindowAtLoss = window;
+        }
+        this.epochStartNanos = 0;
+        
+        return Math.max((int)(this.congestionWindow*BETA), 2*this.mss);
+    }
+    
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This Class paces the senders new segments, spreading them evenly over the round trip instead
+ * of sending everything the window allows back to back. The rate is either fixed or derived from
+ * the congestion window over the smoothed round trip time, scaled by a gain so pacing never holds
+ * the sender below its window (twice the window in slow start so it can still double each round
+ * trip, 1.25 times after). Waiting parks the send thread until shortly before the send time and
+ * only spins the last few microseconds, which parking can't resolve.
+ * Used by the send thread only.
+ * @author Charbel Zeaiter
+ */
+public class Pacer {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    // The rate that makes the pacer derive its rate from the congestion window.
+    public static final long AUTO_RATE = 0;
+    
+    private static final double SLOW_START_GAIN = 2.0;
+    private static final double CONGESTION_AVOIDANCE_GAIN = 1.25;
+    
+    // Waits shorter than this are spun rather than parked.
+    private static final long SPIN_NANOS = 50000;
+    
+    private long rateBytesPerSecond;
+    private long nextSendNanos;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aRateBytesPerSecond Long, A fixed rate in bytes per second, or AUTO_RATE.
+     */
+    public Pacer(long aRateBytesPerSecond)
+    {
+        this.rateBytesPerSecond = aRateBytesPerSecond;
+        this.nextSendNanos = System.nanoTime();
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Waits until the next segment may be sent, then books its time on the link.
+     * @param aByteSize Integer, The size of the segment about to be sent.
+     * @param aCongestionControl CongestionControl, The senders congestion control (for AUTO_RATE).
+     * @param aSRTTMicros Long, The smoothed round trip time, 0 before the first sample (for AUTO_RATE).
+     */
+    public void pace(int aByteSize, CongestionControl aCongestionControl, long aSRTTMicros)
+    {
+        double rate = this.getRate(aCongestionControl, aSRTTMicros);
+        
+        // Nothing to pace by yet.
+        if(rate <= 0)
+        {
+            return;
+        }
+        
+        this.waitUntil(this.nextSendNanos);
+        
+        // No credit is built up while the sender is idle.
+        long now = System.nanoTime();
+        long start = (this.nextSendNanos-now > 0) ? this.nextSendNanos : now;
+        this.nextSendNanos = start+(long)(aByteSize*1e9/rate);
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Gets the pacing rate.
+     * @param aCongestionControl CongestionControl, The senders congestion control.
+     * @param aSRTTMicros Long, The smoothed round trip time, 0 before the first sample.
+     * @return Double, In bytes per second, 0 if there's none yet.
+     */
+    private double getRate(CongestionControl aCongestionControl, long aSRTTMicros)
+    {
+        if(this.rateBytesPerSecond != AUTO_RATE)
+        {
+            return this.rateBytesPerSecond;
+        }
+        
+        if(aSRTTMicros == 0)
+        {
+            return 0;
+        }
+        
+        double gain = aCongestionControl.isInSlowStart() ? SLOW_START_GAIN : CONGESTION_AVOIDANCE_GAIN;
+        
+        return gain*aCongestionControl.getCongestionWindow()*1e6/aSRTTMicros;
+    }
+    
+    /**
+     * Parks the calling thread until a point in time, spinning only the last few microseconds.
+     * @param aDeadlineNanos Long, A System.nanoTime().
+     */
+    private void waitUntil(long aDeadlineNanos)
+    {
+        long remaining = aDeadlineNanos-System.nanoTime();
+        
+        while(remaining > 0)
+        {
+            if(remaining > SPIN_NANOS)
+            {
+                // Wakes early on an unpark, the loop parks again for what is left.
+                LockSupport.parkNanos(this, remaining-SPIN_NANOS);
+            }
+            else
+            {
+                // Let a sibling hardware thread run while spinning.
+                Thread.onSpinWait();
+            }
+            
+            remaining = aDeadlineNanos-System.nanoTime();
+        }
+    }
+    
+}
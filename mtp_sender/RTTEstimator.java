@@ -0,0 +1,136 @@
+/**
+ * This Class estimates the round trip time from acked segments and derives the senders
+ * retransmission timeout from it (Jacobson/Karels smoothing as in RFC 6298). Following Karn's rule
+ * no segment sent before the latest retransmission is sampled: it may be the retransmission that is
+ * being acked, or the ack may have waited for a retransmitted hole to be filled. Every timeout
+ * doubles the RTO until an ack acknowledges new data. The RTO is kept between a floor and a ceiling.
+ * Not thread safe, callers hold the senders lock.
+ * @author Charbel Zeaiter
+ */
+public class RTTEstimator {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    public static final long MIN_RTO_MILLIS = 10;
+    public static final long MAX_RTO_MILLIS = 60000;
+    
+    // Smoothing gains (alpha 1/8, beta 1/4) and the RTTVAR multiplier 'K'.
+    private static final int ALPHA_SHIFT = 3;
+    private static final int BETA_SHIFT = 2;
+    private static final int K = 4;
+    
+    private long minRTOMicros;
+    private long maxRTOMicros;
+    private long srttMicros;
+    private long rttvarMicros;
+    private long rtoMicros;
+    private long backedOffRTOMicros;
+    private boolean hasSample;
+    private long lastRetransmitNanos;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aInitialRTOMillis Long, The RTO used until the first sample, the bounds are widened to include it.
+     */
+    public RTTEstimator(long aInitialRTOMillis)
+    {
+        this.minRTOMicros = Math.min(MIN_RTO_MILLIS, aInitialRTOMillis)*1000;
+        this.maxRTOMicros = Math.max(MAX_RTO_MILLIS, aInitialRTOMillis)*1000;
+        this.rtoMicros = aInitialRTOMillis*1000;
+        this.backedOffRTOMicros = this.rtoMicros;
+        this.hasSample = false;
+        this.lastRetransmitNanos = System.nanoTime();
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Records that a segment is being retransmitted, no segment sent before now is sampled.
+     * @param aNowNanos Long, The System.nanoTime() of the retransmission.
+     */
+    public void onRetransmit(long aNowNanos)
+    {
+        this.lastRetransmitNanos = aNowNanos;
+    }
+    
+    /**
+     * Adds a round trip time measurement from a newly acked segment, if it can be timed.
+     * @param aSendTimeNanos Long, The System.nanoTime() the segment was sent at.
+     * @param aAckTimeNanos Long, The System.nanoTime() its ack was received at.
+     */
+    public void addSample(long aSendTimeNanos, long aAckTimeNanos)
+    {
+        if(aSendTimeNanos-this.lastRetransmitNanos <= 0)
+        {
+            return;
+        }
+        
+        long rttMicros = Math.max(1, (aAckTimeNanos-aSendTimeNanos)/1000);
+        
+        if(!this.hasSample)
+        {
+            // First measurement.
+            this.srttMicros = rttMicros;
+            this.rttvarMicros = rttMicros/2;
+            this.hasSample = true;
+        }
+        else
+        {
+            long error = Math.abs(this.srttMicros-rttMicros);
+            this.rttvarMicros += (error-this.rttvarMicros) >> BETA_SHIFT;
+            this.srttMicros += (rttMicros-this.srttMicros) >> ALPHA_SHIFT;
+        }
+        
+        this.rtoMicros = this.clamp(this.srttMicros+Math.max(1000, K*this.rttvarMicros));
+        this.backedOffRTOMicros = this.rtoMicros;
+    }
+    
+    /**
+     * Doubles the RTO after a retransmission timeout.
+     */
+    public void backOff()
+    {
+        this.backedOffRTOMicros = this.clamp(this.backedOffRTOMicros*2);
+    }
+    
+    /**
+     * Drops any backoff once an ack acknowledges new data, the peer is reachable again.
+     */
+    public void resetBackOff()
+    {
+        this.backedOffRTOMicros = this.rtoMicros;
+    }
+    
+    /**
+     * Gets the current retransmission timeout, rounded up to whole milliseconds.
+     * @return Long
+     */
+    public long getRTOMillis()
+    {
+        return (this.backedOffRTOMicros+999)/1000;
+    }
+    
+    /**
+     * Gets the smoothed round trip time.
+     * @return Long, In microseconds, or 0 before the first sample.
+     */
+    public long getSRTTMicros()
+    {
+        return this.srttMicros;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Keeps a timeout between the floor and the ceiling.
+     * @param aRTOMicros Long, A timeout in microseconds.
+     * @return Long
+     */
+    private long clamp(long aRTOMicros)
+    {
+        return Math.max(this.minRTOMicros, Math.min(this.maxRTOMicros, aRTOMicros));
+    }
+
+}
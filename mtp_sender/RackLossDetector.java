@@ -0,0 +1,114 @@
+/**
+ * This Class holds the senders time based loss detection state (RACK, RFC 8985). A segment is
+ * deemed lost once a segment sent after it has been delivered (cumulatively acked or SACKed) and
+ * a reordering window has passed beyond the round trip time of that delivery, so losses are found
+ * without three duplicate acks, including losses of retransmissions. It also supplies the tail
+ * loss probe timeout (TLP), a probe sent when acks stop arriving before the RTO would fire.
+ * Not thread safe, callers hold the senders lock.
+ * @author Charbel Zeaiter
+ */
+public class RackLossDetector {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    // The probe timeout never drops below this (the RTO floor).
+    private static final long MIN_PROBE_TIMEOUT_MILLIS = RTTEstimator.MIN_RTO_MILLIS;
+    
+    private long rackSendTimeNanos;
+    private long rackRTTNanos;
+    private long minRTTNanos;
+    private boolean hasDelivered;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor, nothing has been delivered yet.
+     */
+    public RackLossDetector()
+    {
+        this.hasDelivered = false;
+        this.minRTTNanos = Long.MAX_VALUE;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Records a delivery, the most recently sent segment an ack has newly acked or SACKed.
+     * @param aTriple Triple, The segment, or null if the ack delivered nothing new.
+     * @param aNowNanos Long, The System.nanoTime() the ack was received at.
+     */
+    public void onDelivered(Triple aTriple, long aNowNanos)
+    {
+        if(aTriple == null)
+        {
+            return;
+        }
+        
+        long rttNanos = aNowNanos-aTriple.getSendTime();
+        
+        // An ack quicker than any round trip is for the original, not the retransmission.
+        if(aTriple.isRetransmitted() && (rttNanos < this.minRTTNanos))
+        {
+            return;
+        }
+        
+        if(!aTriple.isRetransmitted())
+        {
+            this.minRTTNanos = Math.min(this.minRTTNanos, rttNanos);
+        }
+        
+        if( (!this.hasDelivered) || (aTriple.getSendTime()-this.rackSendTimeNanos > 0) )
+        {
+            this.rackSendTimeNanos = aTriple.getSendTime();
+            this.rackRTTNanos = rttNanos;
+            this.hasDelivered = true;
+        }
+    }
+    
+    /**
+     * Gets when an undelivered segment is deemed lost.
+     * @param aTriple Triple, An in flight segment that hasn't been SACKed.
+     * @return Long, The System.nanoTime() it is lost at, or Long.MAX_VALUE if nothing sent after it has been delivered.
+     */
+    public long getLossDeadline(Triple aTriple)
+    {
+        if( (!this.hasDelivered) || (aTriple.getSendTime()-this.rackSendTimeNanos >= 0) )
+        {
+            return Long.MAX_VALUE;
+        }
+        
+        return aTriple.getSendTime()+this.rackRTTNanos+this.getReorderWindowNanos();
+    }
+    
+    /**
+     * Gets the tail loss probe timeout, two smoothed round trips.
+     * @param aSRTTMicros Long, The smoothed round trip time, 0 before the first sample.
+     * @return Long, The timeout in milliseconds, or 0 if there is no round trip time to base it on yet.
+     */
+    public long getProbeTimeoutMillis(long aSRTTMicros)
+    {
+        if(aSRTTMicros == 0)
+        {
+            return 0;
+        }
+        
+        return Math.max(MIN_PROBE_TIMEOUT_MILLIS, (2*aSRTTMicros+999)/1000);
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Gets the reordering window, a quarter of the minimum round trip time.
+     * @return Long, In nanoseconds.
+     */
+    private long getReorderWindowNanos()
+    {
+        if(this.minRTTNanos == Long.MAX_VALUE)
+        {
+            return 0;
+        }
+        
+        return this.minRTTNanos/4;
+    }
+    
+}
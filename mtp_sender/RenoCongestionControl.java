@@ -0,0 +1,138 @@
+/**
+ * Reno congestion control (RFC 5681): slow start up to the slow start threshold, then congestion
+ * avoidance growing the window by about one MSS per round trip. A fast retransmit halves the window
+ * and enters fast recovery, where every further duplicate ack inflates it by one MSS and a partial
+ * ack deflates it by the acked data (RFC 6582) until the recovery point is acked. A timeout halves
+ * the threshold and restarts slow start from one MSS.
+ * @author Charbel Zeaiter
+ */
+public class RenoCongestionControl implements CongestionControl {
+    
+    // Class Fields /////////////////////////////////////////////////
+    protected int mss;
+    protected int maxWindow;
+    protected volatile int congestionWindow;
+    protected int slowStartThreshold;
+    protected boolean inFastRecovery;
+    private int bytesAcked;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aMSS Integer, The maximum segment size.
+     * @param aMaxWindow Integer, The largest useful window in bytes (the window never grows past it).
+     */
+    public RenoCongestionControl(int aMSS, int aMaxWindow)
+    {
+        this.mss = aMSS;
+        this.maxWindow = Math.max(aMaxWindow, aMSS);
+        
+        // Initial window (RFC 3390) and an unbounded threshold.
+        this.congestionWindow = Math.min(this.maxWindow, Math.min(4*aMSS, Math.max(2*aMSS, 4380)));
+        this.slowStartThreshold = Integer.MAX_VALUE;
+        this.inFastRecovery = false;
+        this.bytesAcked = 0;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    public void onAck(int aAckedBytes, long aSRTTMicros)
+    {
+        if(this.congestionWindow < this.slowStartThreshold)
+        {
+            // Slow start, counting at most two segments per ack (RFC 3465).
+            this.setCongestionWindow(this.congestionWindow+Math.min(aAckedBytes, 2*this.mss));
+        }
+        else
+        {
+            this.congestionAvoidance(aAckedBytes, aSRTTMicros);
+        }
+    }
+    
+    public void onDuplicateAck()
+    {
+        if(this.inFastRecovery)
+        {
+            // Each duplicate ack means a segment has left the network.
+            this.setCongestionWindow(this.congestionWindow+this.mss);
+        }
+    }
+    
+    public void onFastRetransmit(int aFlightBytes)
+    {
+        this.slowStartThreshold = this.getReducedThreshold(aFlightBytes);
+        this.setCongestionWindow(this.slowStartThreshold+3*this.mss);
+        this.inFastRecovery = true;
+        this.bytesAcked = 0;
+    }
+    
+    public void onPartialAck(int aAckedBytes)
+    {
+        // Deflate by the acked data, which has left the network, and add back the retransmission.
+        this.setCongestionWindow(Math.max(this.congestionWindow-aAckedBytes, 0)+this.mss);
+    }
+    
+    public void onRecoveryComplete(int aFlightBytes)
+    {
+        // Deflate the window, without allowing a burst if little is left in flight.
+        this.inFastRecovery = false;
+        this.congestionWindow = Math.min(this.slowStartThreshold, Math.max(aFlightBytes, this.mss)+this.mss);
+        this.bytesAcked = 0;
+    }
+    
+    public void onTimeout(int aFlightBytes)
+    {
+        this.slowStartThreshold = this.getReducedThreshold(aFlightBytes);
+        this.congestionWindow = this.mss;
+        this.inFastRecovery = false;
+        this.bytesAcked = 0;
+    }
+    
+    public boolean isInSlowStart()
+    {
+        return this.congestionWindow < this.slowStartThreshold;
+    }
+    
+    public int getCongestionWindow()
+    {
+        return this.congestionWindow;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Grows the window in congestion avoidance, by one MSS for every window of acked bytes.
+     * @param aAckedBytes Integer, The number of newly acked bytes.
+     * @param aSRTTMicros Long, The smoothed round trip time, 0 before the first sample.
+     */
+    protected void congestionAvoidance(int aAckedBytes, long aSRTTMicros)
+    {
+        this.bytesAcked += aAckedBytes;
+        if(this.bytesAcked >= this.congestionWindow)
+        {
+            this.bytesAcked -= this.congestionWindow;
+            this.setCongestionWindow(this.congestionWindow+this.mss);
+        }
+    }
+    
+    /**
+     * Gets the slow start threshold after a loss.
+     * @param aFlightBytes Integer, The number of bytes in flight.
+     * @return Integer, Half the flight, at least two segments.
+     */
+    protected int getReducedThreshold(int aFlightBytes)
+    {
+        return Math.max(aFlightBytes/2, 2*this.mss);
+    }
+    
+    /**
+     * Sets the window, never past the largest useful window.
+     * @param aCongestionWindow Integer, The window in bytes.
+     */
+    protected void setCongestionWindow(int aCongestionWindow)
+    {
+        this.congestionWindow = Math.min(aCongestionWindow, this.maxWindow);
+    }
+    
+}
@@ -1,4 +1,4 @@
 
 public enum SegmentStatus {
-    ACKED, SENT, USABLE
+    ACKED, SENT, SACKED, USABLE
 }
@@ -1,81 +1,86 @@
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
- * This class is used prepare the data to be sent (from the file that the sender is pointed to) 
- * and segment it into an array of segments to be later used in the senders send algorithm.
+ * This class is used prepare the data to be sent (from the file that the sender is pointed to)
+ * and segment it as the senders send algorithm asks for segments, so only as much input is read
+ * ahead as the send window needs and the input may be of any length.
+ * A regular file is memory mapped a chunk at a time and a segments payload is a read-only slice of
+ * the mapping, sized when the file is opened. Any other input (a named pipe, a device or standard
+ * input when the filename is '-') is read into a new buffer per segment until the input ends.
  * @author Charbel Zeaiter
  */
 public class SegmentStream {
     
     // Class Fields /////////////////////////////////////////////////
-    private ArrayList<Triple> mySegmentStream;
+    
+    // The filename that makes the sender read its data from standard input.
+    public static final String STANDARD_INPUT_NAME = "-";
+    
+    // A single mapping can't exceed 2GB, so regular files are mapped in chunks of about 1GB.
+    private static final long MAX_CHUNK_BYTE_SIZE = 1L << 30;
+    
     private Sender mySender;
+    private int segmentSize;
+    private int nextSeqNum;
+    private boolean endOfStream;
+    
+    // Set when mapping a regular file.
+    private FileChannel myFileChannel;
+    private long totalFileBytes;
+    private long chunkByteSize;
+    private long fileOffset;
+    private MappedByteBuffer myMappedChunk;
+    private long mappedChunkStart;
+    
+    // Set when reading any other input.
+    private ReadableByteChannel myInputChannel;
     
     // Class Constuctor /////////////////////////////////////////////
     
     /**
-     * Class Constructor.
+     * Class Constructor, opens the input. No data is read until the first segment is asked for.
      * @param aSender Sender, A reference to the 'global' sender object where data will be updated and used.
+     * @param aFirstSeqNum Integer, The sequence number of the first data byte.
      */
-    public SegmentStream(Sender aSender)
-    {   
+    public SegmentStream(Sender aSender, int aFirstSeqNum)
+    {
         this.mySender = aSender;
+        this.segmentSize = this.mySender.MAX_SEGMENT_SIZE;
+        this.nextSeqNum = aFirstSeqNum;
+        this.endOfStream = false;
         
-        // Create empty segment stream.
-        this.mySegmentStream = new ArrayList<Triple>();
-        
-        // Read in Bytes from text file.
-        try 
+        try
         {
-            FileInputStream newInputStream = new FileInputStream(this.mySender.FILENAME);
-            
-            // Setting variables and calculations.
-            int totalFileBytes = newInputStream.available();
-            int numFullSeg = totalFileBytes/this.mySender.MAX_SEGMENT_SIZE;
-            int lastByteSegLength = totalFileBytes - (this.mySender.MAX_SEGMENT_SIZE*numFullSeg);
-            int counter = 1;
-            
-            // Segmentation algorithm.
-            
-            byte[] aDataSegment;
-            
-            // Make an ajustment for first segment.
-            if(numFullSeg == 0)
+            if(STANDARD_INPUT_NAME.equals(this.mySender.FILENAME))
             {
-                aDataSegment = new byte[lastByteSegLength];
+                this.myInputChannel = Channels.newChannel(System.in);
             }
-            else
+            else if(new File(this.mySender.FILENAME).isFile())
             {
-                aDataSegment = new byte[this.mySender.MAX_SEGMENT_SIZE];
+                // Only a regular file has a size that can be mapped.
+                this.myFileChannel = new RandomAccessFile(this.mySender.FILENAME, "r").getChannel();
+                this.totalFileBytes = this.myFileChannel.size();
+                
+                // Chunks hold a whole number of segments so a segment never spans two mappings.
+                this.chunkByteSize = (MAX_CHUNK_BYTE_SIZE/this.segmentSize)*this.segmentSize;
+                this.fileOffset = 0;
             }
-            
-            // Go through data in file and assign segments.
-            while(newInputStream.read(aDataSegment) != -1)
+            else
             {
-                Triple newPair = new Triple(0, aDataSegment);
-                this.mySegmentStream.add(newPair);
-                
-                counter++;
-                
-                if(counter == numFullSeg+1)
-                {
-                    aDataSegment = new byte[lastByteSegLength];
-                }
-                else
-                {
-                    aDataSegment = new byte[this.mySender.MAX_SEGMENT_SIZE];
-                }
-                
+                // Pipes and other special files have no size, read them as a stream.
+                this.myInputChannel = new FileInputStream(this.mySender.FILENAME).getChannel();
             }
-            
-            // Assign sequence number to each data segment.
-            this.giveSeqToSeg();
-            
         }
-        catch (FileNotFoundException e) 
+        catch (FileNotFoundException e)
         {
             // Get current line number.
             int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
@@ -91,46 +96,179 @@ public class SegmentStream {
             // Handle exception.
             this.processException(e, lineNumber);
         }
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Gets the size of the input to be sent, known only for a regular file.
+     * @param aFilename String, The filename the sender reads from.
+     * @return Long, The size in bytes, or MTPHeader.UNKNOWN_STREAM_SIZE.
+     */
+    public static long getStreamByteSize(String aFilename)
+    {
+        File inputFile = new File(aFilename);
         
+        if( (STANDARD_INPUT_NAME.equals(aFilename)) || (!inputFile.isFile()) )
+        {
+            return MTPHeader.UNKNOWN_STREAM_SIZE;
+        }
         
+        return inputFile.length();
     }
     
-    // Class Methods ////////////////////////////////////////////////
+    /**
+     * Gets the next segment of the input. Every segment but the last carries a full MSS of data.
+     * @return Triple, The next segment, or null once the input has ended.
+     */
+    public Triple getNextSegment()
+    {
+        if(this.endOfStream)
+        {
+            return null;
+        }
+        
+        ByteBuffer payLoad = null;
+        
+        try
+        {
+            if(this.myFileChannel != null)
+            {
+                payLoad = this.getMappedPayLoad();
+            }
+            else
+            {
+                payLoad = this.getReadPayLoad();
+            }
+        }
+        catch(IOException e)
+        {
+            // Get current line number.
+            int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
+            
+            // Handle exception.
+            this.processException(e, lineNumber);
+        }
+        
+        if(payLoad == null)
+        {
+            this.endOfStream = true;
+            this.close();
+            return null;
+        }
+        
+        // Number the segment and move on past its data.
+        Triple newTriple = new Triple(this.nextSeqNum, payLoad);
+        this.nextSeqNum = this.mySender.myMTPCalculation.getNextSeqNum(this.nextSeqNum, payLoad.remaining());
+        
+        return newTriple;
+    }
     
     /**
-     * Gets the reference of the data segment array.
-     * @return ArrayList<Triple>
+     * Checks if the input has ended (every segment has been handed out).
+     * @return Boolean
      */
-    public ArrayList<Triple> getDataSegmentArray()
+    public boolean isEndOfStream()
     {
-        return this.mySegmentStream;
+        return this.endOfStream;
     }
     
     /**
-     * Gets the last segment sequence number.
+     * Gets the sequence number following the last segment handed out, once the input has ended
+     * this is the sequence number a cumulative ack of the whole stream carries.
      * @return Integer
      */
-    public int getLastSegSeqNum()
+    public int getNextSeqNum()
     {
-        int segmentArrayLength = this.mySegmentStream.size();
-        Triple lastSeg = this.mySegmentStream.get(segmentArrayLength-1);
-        return lastSeg.getSequenceNumber();
+        return this.nextSeqNum;
     }
     
     /**
-     * Assigns sequence numbers to all segments in the segment stream.
+     * Closes the input. Slices already handed out stay readable.
      */
-    private void giveSeqToSeg()
-    {   
-        int currentSeqNum = this.mySender.sequenceNumber;
-        
-        for(Triple element : mySegmentStream)
+    public void close()
+    {
+        try
         {
-            element.setSequenceNumber(currentSeqNum);
+            if(this.myFileChannel != null)
+            {
+                this.myFileChannel.close();
+            }
+            if(this.myInputChannel != null)
+            {
+                this.myInputChannel.close();
+            }
+        }
+        catch(IOException e)
+        {
+            // Get current line number.
+            int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
             
-            currentSeqNum = this.mySender.myMTPCalculation.getNextSeqNum(currentSeqNum, element.getDataSegment().length);
+            // Handle exception.
+            this.processException(e, lineNumber);
+        }
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Gets the next segments payload as a read-only slice of the mapped file, mapping the next
+     * chunk when the current one has been used up.
+     * @return ByteBuffer, The payload, or null at the end of the file.
+     */
+    private ByteBuffer getMappedPayLoad() throws IOException
+    {
+        if(this.fileOffset >= this.totalFileBytes)
+        {
+            return null;
+        }
+        
+        // Map the chunk holding the next segment. Earlier chunks stay mapped for as long as
+        // slices of them are still in flight.
+        if( (this.myMappedChunk == null) || (this.fileOffset-this.mappedChunkStart >= this.chunkByteSize) )
+        {
+            this.mappedChunkStart = this.fileOffset;
+            long chunkLength = Math.min(this.chunkByteSize, this.totalFileBytes-this.mappedChunkStart);
+            this.myMappedChunk = this.myFileChannel.map(FileChannel.MapMode.READ_ONLY, this.mappedChunkStart, chunkLength);
+        }
+        
+        int chunkOffset = (int)(this.fileOffset-this.mappedChunkStart);
+        int length = (int)Math.min(this.segmentSize, this.totalFileBytes-this.fileOffset);
+        
+        ByteBuffer payLoad = this.myMappedChunk.asReadOnlyBuffer();
+        payLoad.limit(chunkOffset+length);
+        payLoad.position(chunkOffset);
+        
+        this.fileOffset += length;
+        
+        return payLoad.slice();
+    }
+    
+    /**
+     * Reads the next segments payload from the input, blocking until a full segment has been
+     * read or the input ends.
+     * @return ByteBuffer, The payload, or null at the end of the input.
+     */
+    private ByteBuffer getReadPayLoad() throws IOException
+    {
+        ByteBuffer payLoad = ByteBuffer.allocate(this.segmentSize);
+        
+        while(payLoad.hasRemaining())
+        {
+            if(this.myInputChannel.read(payLoad) < 0)
+            {
+                break;
+            }
+        }
+        
+        payLoad.flip();
+        
+        if(!payLoad.hasRemaining())
+        {
+            return null;
         }
         
+        return payLoad;
     }
     
     /**
@@ -0,0 +1,319 @@
+/**
+ * This Class holds the senders in flight segments (sent but not yet cumulatively acked) in a ring,
+ * in sequence order starting at the send base. Every segment but the last of the stream carries a
+ * full MSS, so a segments slot is found directly from its distance to the send base.
+ * Not thread safe, callers hold the senders lock.
+ * @author Charbel Zeaiter
+ */
+public class SendWindow {
+    
+    // Class Fields /////////////////////////////////////////////////
+    
+    // The ring starts no larger than this and grows as needed.
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+    
+    private MTPCalculation myMTPCalculation;
+    private int segmentSize;
+    private Triple[] slots;
+    private int mask;
+    private int head;
+    private int count;
+    private Triple[] lostSegments;
+    private int lostCount;
+    private long nextLossDeadlineNanos;
+    private Triple newestDelivered;
+    
+    // Class Constructor ////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aMTPCalculation MTPCalculation, The calculation object holding the sequence number space.
+     * @param aSegmentSize Integer, The MSS every segment but the last is filled to.
+     * @param aMaxSegments Integer, The number of segments expected in flight at most (the ring grows if needed).
+     */
+    public SendWindow(MTPCalculation aMTPCalculation, int aSegmentSize, int aMaxSegments)
+    {
+        this.myMTPCalculation = aMTPCalculation;
+        this.segmentSize = aSegmentSize;
+        
+        // Ring size is a power of two so slots wrap with a mask.
+        int capacity = 1;
+        while( (capacity < aMaxSegments) && (capacity < MAX_INITIAL_CAPACITY) )
+        {
+            capacity = capacity*2;
+        }
+        
+        this.slots = new Triple[capacity];
+        this.mask = capacity-1;
+        this.head = 0;
+        this.count = 0;
+        this.lostSegments = new Triple[capacity];
+        this.lostCount = 0;
+        this.nextLossDeadlineNanos = Long.MAX_VALUE;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Adds the next segment of the stream to the end of the window.
+     * @param aTriple Triple, The segment being put in flight.
+     */
+    public void add(Triple aTriple)
+    {
+        if(this.count == this.slots.length)
+        {
+            this.grow();
+        }
+        
+        this.slots[(this.head+this.count) & this.mask] = aTriple;
+        this.count++;
+    }
+    
+    /**
+     * Finds the in flight segment starting at the specified sequence number.
+     * @param aSeqNum Integer, A sequence number.
+     * @return Triple, The segment, or null if no in flight segment starts there.
+     */
+    public Triple get(int aSeqNum)
+    {
+        if(this.count == 0)
+        {
+            return null;
+        }
+        
+        long distance = this.myMTPCalculation.getSeqDistance(this.slots[this.head].getSequenceNumber(), aSeqNum);
+        long index = distance/this.segmentSize;
+        
+        if( (distance%this.segmentSize != 0) || (index >= this.count) )
+        {
+            return null;
+        }
+        
+        return this.slots[(this.head+(int)index) & this.mask];
+    }
+    
+    /**
+     * Gets the first (oldest) in flight segment.
+     * @return Triple, The segment at the send base, or null if nothing is in flight.
+     */
+    public Triple getFirst()
+    {
+        if(this.count == 0)
+        {
+            return null;
+        }
+        
+        return this.slots[this.head];
+    }
+    
+    /**
+     * Marks every segment below a cumulative ack 'ACKED' and releases it from the window.
+     * @param aAckValue Integer, The cumulative ack number.
+     * @return Triple, The last (newest) segment released, or null if none were.
+     */
+    public Triple advance(int aAckValue)
+    {
+        Triple released = null;
+        
+        while( (this.count > 0) && this.myMTPCalculation.isSeqBefore(this.slots[this.head].getSequenceNumber(), aAckValue) )
+        {
+            released = this.slots[this.head];
+            if(released.getStatus() != SegmentStatus.SACKED)
+            {
+                this.delivered(released);
+            }
+            released.setStatus(SegmentStatus.ACKED);
+            this.slots[this.head] = null;
+            this.head = (this.head+1) & this.mask;
+            this.count--;
+        }
+        
+        return released;
+    }
+    
+    /**
+     * Marks the in flight segments a SACK block covers 'SACKED'.
+     * @param aStartSeqNum Integer, The first sequence number the receiver holds.
+     * @param aEndSeqNum Integer, The sequence number following the last one it holds.
+     * @return Integer, The number of bytes newly marked.
+     */
+    public int sack(int aStartSeqNum, int aEndSeqNum)
+    {
+        if(this.count == 0)
+        {
+            return 0;
+        }
+        
+        int baseSeqNum = this.slots[this.head].getSequenceNumber();
+        if(!this.myMTPCalculation.isSeqAfter(aEndSeqNum, baseSeqNum))
+        {
+            return 0;
+        }
+        
+        // First segment starting inside the block.
+        long index = 0;
+        if(this.myMTPCalculation.isSeqAfter(aStartSeqNum, baseSeqNum))
+        {
+            index = (this.myMTPCalculation.getSeqDistance(baseSeqNum, aStartSeqNum)+this.segmentSize-1)/this.segmentSize;
+        }
+        
+        int sackedBytes = 0;
+        for(;index<this.count;index++)
+        {
+            Triple segment = this.slots[(this.head+(int)index) & this.mask];
+            int segmentEnd = this.myMTPCalculation.getNextSeqNum(segment.getSequenceNumber(), segment.getDataLength());
+            
+            // Stop at the first segment not wholly inside the block.
+            if(this.myMTPCalculation.isSeqAfter(segmentEnd, aEndSeqNum))
+            {
+                break;
+            }
+            
+            if(segment.getStatus() != SegmentStatus.SACKED)
+            {
+                segment.setStatus(SegmentStatus.SACKED);
+                sackedBytes += segment.getDataLength();
+                this.delivered(segment);
+            }
+        }
+        
+        return sackedBytes;
+    }
+    
+    /**
+     * Takes the most recently sent segment acked or SACKed since the last call, for RACK.
+     * @return Triple, The segment, or null if nothing has been delivered since.
+     */
+    public Triple takeNewestDelivered()
+    {
+        Triple newest = this.newestDelivered;
+        this.newestDelivered = null;
+        
+        return newest;
+    }
+    
+    /**
+     * Finds the segments RACK deems lost: not SACKED, and past their loss deadline.
+     * @param aRackLossDetector RackLossDetector, The senders RACK state.
+     * @param aNowNanos Long, The current System.nanoTime().
+     * @return Integer, The number of lost segments, read them with getLost().
+     */
+    public int findLost(RackLossDetector aRackLossDetector, long aNowNanos)
+    {
+        this.lostCount = 0;
+        this.nextLossDeadlineNanos = Long.MAX_VALUE;
+        
+        for(int i=0;i<this.count;i++)
+        {
+            Triple segment = this.slots[(this.head+i) & this.mask];
+            
+            if(segment.getStatus() == SegmentStatus.SACKED)
+            {
+                continue;
+            }
+            
+            long deadline = aRackLossDetector.getLossDeadline(segment);
+            if(deadline == Long.MAX_VALUE)
+            {
+                continue;
+            }
+            
+            if(aNowNanos-deadline >= 0)
+            {
+                this.lostSegments[this.lostCount] = segment;
+                this.lostCount++;
+            }
+            else if( (this.nextLossDeadlineNanos == Long.MAX_VALUE) || (deadline-this.nextLossDeadlineNanos < 0) )
+            {
+                // Not lost yet, but will be unless delivered by then.
+                this.nextLossDeadlineNanos = deadline;
+            }
+        }
+        
+        return this.lostCount;
+    }
+    
+    /**
+     * Gets a lost segment found by the last findLost(), in sequence order.
+     * @param aIndex Integer, Below the count findLost() returned.
+     * @return Triple
+     */
+    public Triple getLost(int aIndex)
+    {
+        return this.lostSegments[aIndex];
+    }
+    
+    /**
+     * Gets the earliest loss deadline still pending after the last findLost().
+     * @return Long, A System.nanoTime(), or Long.MAX_VALUE if none is pending.
+     */
+    public long getNextLossDeadline()
+    {
+        return this.nextLossDeadlineNanos;
+    }
+    
+    /**
+     * Gets the last (newest) in flight segment.
+     * @return Triple, The segment, or null if nothing is in flight.
+     */
+    public Triple getLast()
+    {
+        if(this.count == 0)
+        {
+            return null;
+        }
+        
+        return this.slots[(this.head+this.count-1) & this.mask];
+    }
+    
+    /**
+     * Checks if any segments are in flight.
+     * @return Boolean
+     */
+    public boolean isEmpty()
+    {
+        return this.count == 0;
+    }
+    
+    /**
+     * Gets the number of segments in flight.
+     * @return Integer
+     */
+    public int size()
+    {
+        return this.count;
+    }
+    
+    // Helper Subroutines ///////////////////////////////////////////
+    
+    /**
+     * Keeps the most recently sent of the delivered segments.
+     * @param aTriple Triple, A segment just acked or SACKed.
+     */
+    private void delivered(Triple aTriple)
+    {
+        if( (this.newestDelivered == null) || (aTriple.getSendTime()-this.newestDelivered.getSendTime() > 0) )
+        {
+            this.newestDelivered = aTriple;
+        }
+    }
+    
+    /**
+     * Doubles the ring, keeping the segments in order from the start.
+     */
+    private void grow()
+    {
+        Triple[] newSlots = new Triple[this.slots.length*2];
+        
+        for(int i=0;i<this.count;i++)
+        {
+            newSlots[i] = this.slots[(this.head+i) & this.mask];
+        }
+        
+        this.slots = newSlots;
+        this.mask = newSlots.length-1;
+        this.head = 0;
+        this.lostSegments = new Triple[newSlots.length];
+    }
+
+}
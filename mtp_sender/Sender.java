@@ -1,13 +1,8 @@
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.Timer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -27,34 +22,84 @@ public class Sender {
     public final int TIMEOUT_VALUE;
     public final float PROB_OF_DROP;
     public final int SEED_VALUE;
+    public final String CONGESTION_CONTROL;
+    public final long PACING_RATE;
+    public final int LOG_CAPTURE_BYTES;
+    
+    // Congestion control algorithm names.
+    public static final String RENO = "reno";
+    public static final String CUBIC = "cubic";
+    
+    // Pacing rate that turns pacing off.
+    public static final long PACING_OFF = -1;
+    
+    // Event log file written in the working directory.
+    public static final String LOG_FILENAME = "mtp_sender_log.bin";
+    
+    // The in flight limit never exceeds a quarter of the sequence number space.
+    public static final int MAX_WINDOW_BYTES = 1 << 29;
+    
+    // Received segment buffers kept for reuse, acks are handled one at a time.
+    private static final int MAX_FREE_SEGMENT_BUFFERS = 4;
     
-    public final int HEADER_BIT_LENGTH;
     public final int HEADER_BYTE_SIZE;
     public final int MAX_INT_NUMBER;
     
     public boolean connected;
     public int sequenceNumber;
     public int ackNumber;
-    public int sendBase;
+    public volatile int sendBase;
+    public int windowScale;
+    public int peerWindowScale;
+    public volatile int receiverWindowBytes;
     
     public MTPCalculation myMTPCalculation;
-    public DatagramSocket socketUDP;
-    public ArrayList<Triple> dataSegmentStream;
-    public Timer timer;
-    public boolean timerOn;
+    public DatagramChannel channelUDP;
+    public SegmentStream mySegmentStream;
+    public SendWindow mySendWindow;
+    public MTPTimer retransmitTimer;
+    public MTPTimer probeTimer;
+    public MTPTimer reorderTimer;
+    public RTTEstimator myRTTEstimator;
+    public RackLossDetector myRackLossDetector;
+    public CongestionControl myCongestionControl;
+    public Pacer myPacer;
+    public Thread sendThread;
+    public BufferPool myBufferPool;
     public PLD myPLDModule;
     public ReentrantLock myLock;
     public boolean firstDuplicateAck;
     public int lastAck;
     public int duplicateAckCount;
-    public int lastSeqmentSeqNum;
-    public PrintWriter senderLogWriter;
-    public long startingSystemTime;
+    public boolean inRecovery;
+    public int recoveryPoint;
+    public long recoveryStartNanos;
+    public EventLog myEventLog;
+    
+    // Re-used for every gathering write and retransmission (guarded by myLock).
+    private ByteBuffer[] mySegmentBuffers;
+    private MTPHeader myRetransmitHeader;
     
     
+    /**
+     * Class Constructor.
+     * @param aReceiverHostIP String, The receivers IP address.
+     * @param aReceiverPort Integer, The receivers port.
+     * @param aFilename String, The file to send, a named pipe or '-' for standard input.
+     * @param aMaxWindowSize Integer, The maximum window size (MWS).
+     * @param aMaxSegmentSize Integer, The maximum segment size (MSS) in bytes.
+     * @param aTimeoutValue Integer, The initial retransmission timeout in milliseconds.
+     * @param aProbOfDrop Float, The probability the PLD module drops a segment.
+     * @param aSeedValue Integer, The PLD modules random seed.
+     * @param aCongestionControl String, RENO or CUBIC.
+     * @param aPacingRate Long, PACING_OFF, Pacer.AUTO_RATE or a rate in bytes per second.
+     * @param aLogCaptureBytes Integer, The payload bytes of each data segment copied into the event log, 0 copies none.
+     * @param aLogFilename String, The event log file, LOG_FILENAME in the working directory by default.
+     */
     public Sender(String aReceiverHostIP, int aReceiverPort, String aFilename,
                   int aMaxWindowSize, int aMaxSegmentSize, int aTimeoutValue,
-                  float aProbOfDrop, int aSeedValue)
+                  float aProbOfDrop, int aSeedValue, String aCongestionControl,
+                  long aPacingRate, int aLogCaptureBytes, String aLogFilename)
     {
         // Setting all the field values.
         this.RECEIVER_HOST_IP = aReceiverHostIP;
@@ -65,40 +110,64 @@ public class Sender {
         this.TIMEOUT_VALUE = aTimeoutValue;
         this.PROB_OF_DROP = aProbOfDrop;
         this.SEED_VALUE = aSeedValue;
+        this.CONGESTION_CONTROL = aCongestionControl;
+        this.PACING_RATE = aPacingRate;
+        this.LOG_CAPTURE_BYTES = aLogCaptureBytes;
         
         this.SENDER_HOST_PORT = 50001;
         
-        this.HEADER_BIT_LENGTH = 164;
-        this.HEADER_BYTE_SIZE = 21;
+        this.HEADER_BYTE_SIZE = MTPHeader.HEADER_BYTE_SIZE;
         this.MAX_INT_NUMBER = 2147483647;
         
         this.connected = false;
         
+        // Window sent in the SYN, and assumed for the receiver until it replies.
+        this.windowScale = MTPHeader.getWindowScale(this.MAX_WINDOW_SIZE);
+        this.peerWindowScale = 0;
+        this.receiverWindowBytes = this.getWindowBytes(this.MAX_WINDOW_SIZE);
+        
         this.myMTPCalculation = new MTPCalculation(this.SEED_VALUE, this.MAX_INT_NUMBER);
         this.myPLDModule = new PLD(this.PROB_OF_DROP, this.SEED_VALUE);
         
-        this.timer = new Timer();
-        this.timerOn = false;
+        this.retransmitTimer = new MTPTimer(new SenderTimeoutTask(this));
+        this.myRTTEstimator = new RTTEstimator(this.TIMEOUT_VALUE);
+        
+        // Time based loss detection, re-checked when a loss deadline passes, and tail loss probes.
+        this.myRackLossDetector = new RackLossDetector();
+        this.reorderTimer = new MTPTimer(new SenderLossDetectionTask(this));
+        this.probeTimer = new MTPTimer(new SenderProbeTask(this));
+        this.myCongestionControl = this.createCongestionControl(this.CONGESTION_CONTROL);
+        
+        // Pacing is optional, at a fixed rate or derived from the congestion window.
+        if(this.PACING_RATE != PACING_OFF)
+        {
+            this.myPacer = new Pacer(this.PACING_RATE);
+        }
         
         this.myLock = new ReentrantLock();
         
+        // Buffers for received segments, acks may carry SACK blocks.
+        this.myBufferPool = new BufferPool(this.HEADER_BYTE_SIZE+MTPSack.MAX_BYTE_SIZE, MAX_FREE_SEGMENT_BUFFERS);
+        
         this.duplicateAckCount = 0;
         this.firstDuplicateAck = false;
+        this.inRecovery = false;
         
-        // Create senders text log file..
-        try {
-            this.senderLogWriter = new PrintWriter("mtp_sender_log.txt", "UTF-8");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-        }
+        // Segments in flight (sent but not yet cumulatively acked), in sequence order.
+        this.mySendWindow = new SendWindow(this.myMTPCalculation, this.MAX_SEGMENT_SIZE, this.MAX_WINDOW_SIZE);
+        
+        // Create senders binary event log file, written by its own thread.
+        this.myEventLog = new EventLog(aLogFilename, this.LOG_CAPTURE_BYTES);
         
-        this.startingSystemTime = System.currentTimeMillis();
+        this.mySegmentBuffers = new ByteBuffer[2];
+        this.myRetransmitHeader = new MTPHeader();
         
-        // Creating needed sockets to send and listen on.
+        // Creating the channel to send and listen on, connected to the receiver so its address
+        // is only resolved once.
         try {
-            this.socketUDP = new DatagramSocket(this.SENDER_HOST_PORT);
+            this.channelUDP = DatagramChannel.open();
+            this.channelUDP.bind(new InetSocketAddress(this.SENDER_HOST_PORT));
+            this.channelUDP.connect(new InetSocketAddress(this.RECEIVER_HOST_IP, this.RECEIVER_HOST_PORT));
         } catch (IOException e) {
             // Get current line number.
             int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
@@ -111,74 +180,68 @@ public class Sender {
     
     public void handShake()
     {   
-        // Output sender status/event to text log file.
-        this.senderLogWriter.print("TIME: "+this.getCurrentSeconds()+"ms");
-        this.senderLogWriter.print("\nEntering hanshaking mode");
-        this.senderLogWriter.flush();
+        // Log sender status/event.
+        this.myEventLog.log(EventLog.ENTERING_HANDSHAKE);
         
         // Output Host State.
         System.out.println("State: CLOSED");
         
         // Creating MTP header.
-        BitSet newMTPHeaderBitSet = new BitSet(this.HEADER_BIT_LENGTH);
-        MTPHeader newMTPHeader = new MTPHeader(newMTPHeaderBitSet);
+        MTPHeader newMTPHeader = new MTPHeader();
         
         // Set Header values.
         newMTPHeader.setSYN();
         newMTPHeader.setDestPort(this.RECEIVER_HOST_PORT);
         newMTPHeader.setSRCPort(this.SENDER_HOST_PORT);
         newMTPHeader.setMSS(this.MAX_SEGMENT_SIZE);
-        newMTPHeader.setMWS(this.MAX_WINDOW_SIZE);
+        newMTPHeader.setScaledMWS(this.MAX_WINDOW_SIZE, this.windowScale);
+        
+        // Offer window scaling, the payload is the shift applied to the MWS values sent followed
+        // by the size of the stream so the receiver can preallocate its file.
+        long streamByteSize = SegmentStream.getStreamByteSize(this.FILENAME);
+        ByteBuffer synOptions = ByteBuffer.allocate(MTPHeader.SYN_OPTIONS_BYTE_SIZE);
+        synOptions.put(0, (byte)this.windowScale);
+        synOptions.putLong(MTPHeader.WINDOW_SCALE_BYTE_SIZE, streamByteSize);
+        newMTPHeader.setPayloadByteLength(MTPHeader.SYN_OPTIONS_BYTE_SIZE);
         
         // Set initial sequence number bits. 
         int initalSeqNumber = this.myMTPCalculation.getStartingSeqNum();
         this.sequenceNumber = initalSeqNumber;
         newMTPHeader.setSequenceNumber(initalSeqNumber);
         
-        // Output sender status/event to text log file.
-        this.senderLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-        this.senderLogWriter.print("\nEVENT: Attempting to Send SYN segment of Seq: "+initalSeqNumber);
-        this.senderLogWriter.print("\nHEADER: SYN="+newMTPHeader.getSYN()+", ACK="+newMTPHeader.getACK()+", SrcPort="+newMTPHeader.getSRCPort()
-                                    +", DestPort="+newMTPHeader.getDestPort()+", SeqNum="+newMTPHeader.getSequenceNumber()
-                                    +", AckNum="+newMTPHeader.getAckNumber()+", MSS="+newMTPHeader.getMSS()+", MWS="+newMTPHeader.getMWS()
-                                    +", Len="+newMTPHeader.getPayloadByteLength());
-        this.senderLogWriter.print("\nPAYLOAD: NO DATA");
-        this.senderLogWriter.flush();
+        // Log sender status/event.
+        this.myEventLog.logSegment(EventLog.SENDER_SENT_SYN, 0, newMTPHeader, synOptions);
         
         // Send initial SYN Segment.
-        this.sendMTPSegment(newMTPHeaderBitSet, null, false);
+        this.sendMTPSegment(newMTPHeader, synOptions, false);
         
         // Output Host State.
         System.out.println("State: SYN_SENT");
         
         // Listen for SYNACK segment.
-        byte[] byteSegment = this.receiveMTPSegment();
+        ByteBuffer byteSegment = this.receiveMTPSegment();
         
-        // Extract Header.
-        byteSegment = this.myMTPCalculation.extractHeader(byteSegment, this.HEADER_BYTE_SIZE);
-        
-        // Create header BitSet to access bits.
-        BitSet receivedHeaderBits = this.myMTPCalculation.fromByteArray(byteSegment);
-        MTPHeader receivedMTPHeader = new MTPHeader(receivedHeaderBits);
+        // Create header view to access fields.
+        MTPHeader receivedMTPHeader = new MTPHeader(byteSegment);
         
         // Check if  SYN and ACK flags are set.
         if(receivedMTPHeader.getSYN() && receivedMTPHeader.getACK())
         {   
-            if(receivedMTPHeader.getAckNumber() >= this.sequenceNumber)
+            if(!this.myMTPCalculation.isSeqBefore(receivedMTPHeader.getAckNumber(), this.sequenceNumber))
             {   
                 // Update control varibales.
                 this.ackNumber = this.myMTPCalculation.getNextSeqNum(receivedMTPHeader.getSequenceNumber(), 1);
                 this.sequenceNumber = this.myMTPCalculation.getNextSeqNum(this.sequenceNumber, 1);
                 
-                // Output sender status/event to text log file.
-                this.senderLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-                this.senderLogWriter.print("\nEVENT: RECEIVED SYN ACK segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-                this.senderLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                            +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                            +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                            +", Len="+receivedMTPHeader.getPayloadByteLength());
-                this.senderLogWriter.print("\nPAYLOAD: NO DATA");
-                this.senderLogWriter.flush();
+                // The receivers window, scaled if it accepted window scaling.
+                if(receivedMTPHeader.getPayloadByteLength() >= MTPHeader.WINDOW_SCALE_BYTE_SIZE)
+                {
+                    this.peerWindowScale = Math.min(receivedMTPHeader.slicePayLoad().get(0) & 0xFF, MTPHeader.MAX_WINDOW_SCALE);
+                }
+                this.receiverWindowBytes = this.getWindowBytes(receivedMTPHeader.getScaledMWS(this.peerWindowScale));
+                
+                // Log sender status/event.
+                this.myEventLog.logSegment(EventLog.SENDER_RECEIVED_SYN_ACK, 0, receivedMTPHeader, receivedMTPHeader.slicePayLoad());
                 
                 // Output Host State.
                 System.out.println("State: ESTABLISHED");
@@ -191,27 +254,18 @@ public class Sender {
                 receivedMTPHeader.setSequenceNumber(this.sequenceNumber);
                 receivedMTPHeader.setAckNumber(this.ackNumber);
                 receivedMTPHeader.clearSYN();
-                        
-                // Output sender status/event to text log file.
-                this.senderLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-                this.senderLogWriter.print("\nEVENT: Attempting to Send 3rd segment in handshake of Seq: "+receivedMTPHeader.getSequenceNumber());
-                this.senderLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                            +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                            +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                            +", Len="+receivedMTPHeader.getPayloadByteLength());
-                this.senderLogWriter.print("\nPAYLOAD: NO DATA");
-                this.senderLogWriter.flush();
+                receivedMTPHeader.setPayloadByteLength(0);
+                
+                // Log sender status/event.
+                this.myEventLog.logSegment(EventLog.SENDER_SENT_HANDSHAKE_ACK, 0, receivedMTPHeader, null);
                 
                 // Send segment.
-                this.sendMTPSegment(receivedHeaderBits, null, false);
+                this.sendMTPSegment(receivedMTPHeader, null, false);
                 
-                // Generate a new stream of data segments from file.
-                SegmentStream newSegmentSream = new SegmentStream(this);
-                this.dataSegmentStream = newSegmentSream.getDataSegmentArray();
+                // Open the stream of data segments, data is read as the send window needs it.
+                this.mySegmentStream = new SegmentStream(this, this.sequenceNumber);
+                this.sendBase = this.sequenceNumber;
                 
-                // Setting last Sequence number of segment array.
-                this.lastSeqmentSeqNum = newSegmentSream.getLastSegSeqNum();
-  
                 // Output Host State.
                 System.out.println("State: SENT_CONNECTION_GRANTED_SEGMENT");  
             }
@@ -225,10 +279,8 @@ public class Sender {
      */
     public void exchange()
     {   
-        // Output sender status/event to text log file.
-        this.senderLogWriter.print("\n\nTIME: "+this.getCurrentSeconds()+"ms");
-        this.senderLogWriter.print("\nStarting To Transfer Data!");
-        this.senderLogWriter.flush();
+        // Log sender status/event.
+        this.myEventLog.log(EventLog.SENDER_STARTING_TRANSFER);
         
         // Creating send and receive threads to operate at same time.
         Runnable newSenderSend = new SenderSend(this);
@@ -238,22 +290,239 @@ public class Sender {
         Thread thread2 = new Thread(newSenderReceive);
         
         // MTP send protocol is started.
+        this.sendThread = thread1;
         thread1.start();
         thread2.start();
     }
     
-
+    
+    
+    /**
+     * Gets the size of a window counted in segments, in bytes.
+     * @param aWindowSegments Long, The window in segments.
+     * @return Integer, The window in bytes, at most MAX_WINDOW_BYTES.
+     */
+    public int getWindowBytes(long aWindowSegments)
+    {
+        return (int)Math.min(MAX_WINDOW_BYTES, aWindowSegments*this.MAX_SEGMENT_SIZE);
+    }
+    
+    /**
+     * Wakes the send thread if it is waiting for the window to open.
+     */
+    public void wakeSender()
+    {
+        LockSupport.unpark(this.sendThread);
+    }
+    
+    /**
+     * Gets the number of bytes sent but not yet cumulatively acked.
+     * @return Integer
+     */
+    public int getFlightBytes()
+    {
+        return this.myMTPCalculation.getSeqDistance(this.sendBase, this.sequenceNumber);
+    }
+    
+    /**
+     * Starts fast recovery unless it's already running, recovery ends once everything sent so
+     * far (up to the recovery point) has been acked. The caller holds the lock.
+     */
+    public void enterRecovery()
+    {
+        if(!this.inRecovery)
+        {
+            this.inRecovery = true;
+            this.recoveryPoint = this.sequenceNumber;
+            this.recoveryStartNanos = System.nanoTime();
+            
+            // Shrink the congestion window.
+            this.myCongestionControl.onFastRetransmit(this.getFlightBytes());
+        }
+    }
+    
+    /**
+     * (Re)arms the retransmission timer with the current RTO, cancelling any tail loss probe.
+     */
+    public void armRetransmitTimer()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            this.retransmitTimer.arm(this.myRTTEstimator.getRTOMillis());
+            this.probeTimer.cancel();
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Arms the tail loss probe to fire before the retransmission timer, unless the sender is
+     * in fast recovery or there is no round trip time to base it on yet.
+     */
+    public void armProbeTimer()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            long probeTimeout = this.myRackLossDetector.getProbeTimeoutMillis(this.myRTTEstimator.getSRTTMicros());
+            
+            if( (!this.inRecovery) && (probeTimeout > 0) && (probeTimeout < this.myRTTEstimator.getRTOMillis()) )
+            {
+                this.probeTimer.arm(probeTimeout);
+            }
+            else
+            {
+                this.probeTimer.cancel();
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Cancels the retransmission, tail loss probe and loss detection timers.
+     */
+    public void cancelRetransmitTimers()
+    {
+        this.retransmitTimer.cancel();
+        this.probeTimer.cancel();
+        this.reorderTimer.cancel();
+    }
+    
+    /**
+     * Retransmits every segment RACK deems lost (a segment sent after it has been delivered and
+     * the reordering window has passed), and arms the loss detection timer for the earliest
+     * segment that isn't lost yet but will be unless delivered in time.
+     * @return Integer, The number of segments retransmitted.
+     */
+    public int retransmitLost()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            long now = System.nanoTime();
+            
+            // Take in whatever the last ack delivered.
+            this.myRackLossDetector.onDelivered(this.mySendWindow.takeNewestDelivered(), now);
+            
+            int lostCount = this.mySendWindow.findLost(this.myRackLossDetector, now);
+            
+            long nextDeadline = this.mySendWindow.getNextLossDeadline();
+            if(nextDeadline == Long.MAX_VALUE)
+            {
+                this.reorderTimer.cancel();
+            }
+            else
+            {
+                this.reorderTimer.arm(Math.max(1, (nextDeadline-now+999999)/1000000));
+            }
+            
+            if( (lostCount == 0) || !this.channelUDP.isOpen() )
+            {
+                return 0;
+            }
+            
+            this.enterRecovery();
+            
+            for(int i=0;i<lostCount;i++)
+            {
+                this.retransmitSegment(this.mySendWindow.getLost(i), EventLog.SENDER_RACK_RETRANSMIT);
+            }
+            
+            return lostCount;
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Retransmits an in flight segment. The caller holds the lock.
+     * @param aTriple Triple, The segment to retransmit.
+     * @param aEvent Integer, The EventLog code naming the retransmission in the log.
+     */
+    public void retransmitSegment(Triple aTriple, int aEvent)
+    {
+        // Re-using the retransmission header.
+        MTPHeader newMTPHeader = this.myRetransmitHeader;
+        newMTPHeader.clear();
+        
+        // Setting header contents.
+        newMTPHeader.setDestPort(this.RECEIVER_HOST_PORT);
+        newMTPHeader.setSRCPort(this.SENDER_HOST_PORT);
+        newMTPHeader.setSequenceNumber(aTriple.getSequenceNumber());
+        newMTPHeader.setAckNumber(this.ackNumber);
+        newMTPHeader.setPayloadByteLength(aTriple.getDataLength());
+        
+        // Log sender status/event.
+        this.myEventLog.logData(aEvent, newMTPHeader, aTriple.getDataSegment());
+        
+        // Send Segment.
+        long now = System.nanoTime();
+        aTriple.setSendTime(now, true);
+        this.myRTTEstimator.onRetransmit(now);
+        this.sendMTPSegment(newMTPHeader, aTriple.getDataSegment(), true);
+    }
+    
+    
+    /**
+     * Ends the transfer once the input has ended and every segment of it has been cumulatively
+     * acked. Called by both the send and receive threads, whichever sees the last of the two.
+     */
+    public void checkTransferComplete()
+    {
+        // Lock thread.
+        this.myLock.lock();
+        
+        try
+        {
+            if( (!this.connected) || (!this.mySegmentStream.isEndOfStream()) 
+                || (this.sendBase != this.mySegmentStream.getNextSeqNum()) )
+            {
+                return;
+            }
+            
+            // Turn the timers off.
+            this.cancelRetransmitTimers();
+            
+            // Disconnect from receiver and close socket.
+            this.connected = false;
+            this.closeChannel();
+            
+            // Log sender status/event.
+            this.myEventLog.log(EventLog.SENDER_TRANSFER_COMPLETE);
+            
+        } finally {
+            // Unlock thread.
+            this.myLock.unlock();
+        }
+        
+        // Exit program.
+        System.exit(0);
+    }
     
     // Helper Subroutines ///////////////////////////////////////////
     
     /**
      * Used as a global sending function to send any data the sender or any dependent
      * classes might have.
-     * @param aHeaderBitSet BitSet, The set of header bits to send.
-     * @param aBytePayLoad byte[], The byte array of payload data to be sent. 
+     * @param aHeader MTPHeader, The header to send.
+     * @param aPayLoad ByteBuffer, The payload data to be sent (between position and limit), or null. 
      * @param isDroppable Boolean, If the segment to be sent is droppable or not.
      */
-    public void sendMTPSegment(BitSet aHeaderBitSet, byte[] aBytePayLoad, boolean isDroppable)
+    public void sendMTPSegment(MTPHeader aHeader, ByteBuffer aPayLoad, boolean isDroppable)
     {   
         // Check if droppable.
         if(isDroppable)
@@ -262,54 +531,57 @@ public class Sender {
             if(!this.myPLDModule.getToDrop())
             {   
                 // Don't drop and execute send again with drop being false.
-                this.sendMTPSegment(aHeaderBitSet, aBytePayLoad, false);
-
+                this.sendMTPSegment(aHeader, aPayLoad, false);
+                
             }
             else
             {   
                 //  Drop segment and send nothing.
                 
-                // Output sender status/event to text log file.
-                this.senderLogWriter.print("\n---- Was Dropped!");
-                this.senderLogWriter.flush();
+                // Log sender status/event.
+                this.myEventLog.log(EventLog.SENDER_PLD_DROPPED);
             }
-                    
+            
         }
         else
         {   
             // If not droppable then just send.
             
-            // Convert BitSet header into a byte array;
-            byte[] byteHeader = this.myMTPCalculation.toByteArray(aHeaderBitSet);
-      
-            // Prepare total byte msg.
-            byte[] byteMsg = byteHeader;
+            // The header and payload buffers are written as they are with one gathering write,
+            // their positions are put back afterwards so they can be sent again.
+            ByteBuffer headerBuffer = aHeader.getByteBuffer();
+            int headerPosition = headerBuffer.position();
+            int headerLimit = headerBuffer.limit();
+            int payLoadPosition = 0;
             
-            // Check if payload is being sent also and adjust byte array accordingly.
-            if(aBytePayLoad != null)
-            {   
-                // Combines header byte array and payload byte array.
-                byteMsg = this.myMTPCalculation.getFullSegment(byteHeader, aBytePayLoad);
-            }
+            // Lock thread.
+            this.myLock.lock();
             
-            // Try and send segment.
             try 
             {
-                
-                // Create IP Address reference for segment preparation.
-                InetAddress destIP = InetAddress.getByName(this.RECEIVER_HOST_IP);
-                
-                // Make actual UDP segment.
-                DatagramPacket newUDPSegment = new DatagramPacket(byteMsg, byteMsg.length, destIP, this.RECEIVER_HOST_PORT);
-                
-                if(!this.socketUDP.isClosed())
+                if(this.channelUDP.isOpen())
                 {
-                    // Send UDP segment.
-                    this.socketUDP.send(newUDPSegment);
+                    headerBuffer.limit(this.HEADER_BYTE_SIZE);
+                    headerBuffer.position(0);
+                    this.mySegmentBuffers[0] = headerBuffer;
                     
-                    // Output sender status/event to text log file.
-                    this.senderLogWriter.print("\n++++ Was Successfully Sent!");
-                    this.senderLogWriter.flush();
+                    // Check if payload is being sent also.
+                    if(aPayLoad != null)
+                    {   
+                        payLoadPosition = aPayLoad.position();
+                        this.mySegmentBuffers[1] = aPayLoad;
+                        
+                        // Send header and payload as one UDP segment.
+                        this.channelUDP.write(this.mySegmentBuffers, 0, 2);
+                    }
+                    else
+                    {
+                        // Send UDP segment.
+                        this.channelUDP.write(this.mySegmentBuffers, 0, 1);
+                    }
+                    
+                    // Log sender status/event.
+                    this.myEventLog.log(EventLog.SENDER_PLD_SENT);
                 }
             }
             catch (IOException e) 
@@ -319,6 +591,19 @@ public class Sender {
                 
                 // Handle exception.
                 this.processException(e, lineNumber);
+                
+            } finally {
+                // Put the buffers back as they were.
+                headerBuffer.limit(headerLimit);
+                headerBuffer.position(headerPosition);
+                if(aPayLoad != null)
+                {
+                    aPayLoad.position(payLoadPosition);
+                }
+                this.mySegmentBuffers[1] = null;
+                
+                // Unlock thread.
+                this.myLock.unlock();
             }
         }
     }
@@ -326,20 +611,18 @@ public class Sender {
     /**
      * Used as a global receiving function to receive any data the sender or any dependent
      * classes might have.
-     * @return byte[], The segment byte array received. 
+     * @return ByteBuffer, The received segment in a pooled buffer, give it back with releaseMTPSegment(). 
      */
-    public byte[] receiveMTPSegment()
+    public ByteBuffer receiveMTPSegment()
     {
         try
         {   
-            // Create a datagram packet to hold incoming UDP packets.
-            DatagramPacket requestStore = new DatagramPacket(new byte[this.HEADER_BYTE_SIZE], this.HEADER_BYTE_SIZE);
+            // Take a buffer to hold incoming UDP packets (acks may carry SACK blocks).
+            ByteBuffer byteSegment = this.myBufferPool.acquire();
             
             // Receive/Listen for packet.
-            this.socketUDP.receive(requestStore);
-            
-            // Get byte array from transmitted data.
-            byte[] byteSegment = requestStore.getData();
+            this.channelUDP.read(byteSegment);
+            byteSegment.flip();
             
             return byteSegment;
         }
@@ -356,13 +639,53 @@ public class Sender {
     }
     
     /**
-     * Used to get the current amount of milliseconds that have elapsed since the start of the
-     * program.
-     * @return Long, The number of ms passed.
+     * Gives a received segments buffer back to the pool once the segment has been handled.
+     * @param aByteSegment ByteBuffer, A segment from receiveMTPSegment(), not to be used after.
+     */
+    public void releaseMTPSegment(ByteBuffer aByteSegment)
+    {
+        this.myBufferPool.release(aByteSegment);
+    }
+    
+    /**
+     * Closes the senders channel.
+     */
+    public void closeChannel()
+    {
+        try
+        {
+            this.channelUDP.close();
+        }
+        catch (IOException e) 
+        {
+            // Get current line number.
+            int lineNumber = new Exception().getStackTrace()[0].getLineNumber();
+            
+            // Handle exception.
+            this.processException(e, lineNumber);
+        }
+    }
+    
+    /**
+     * Creates the congestion control algorithm with the specified name, the window never grows
+     * past the maximum window size.
+     * @param aName String, Either 'reno' or 'cubic'.
+     * @return CongestionControl
      */
-    public long getCurrentSeconds()
+    private CongestionControl createCongestionControl(String aName)
     {
-        return (System.currentTimeMillis() - this.startingSystemTime);
+        int maxWindowBytes = this.getWindowBytes(this.MAX_WINDOW_SIZE);
+        
+        if(CUBIC.equals(aName))
+        {
+            return new CubicCongestionControl(this.MAX_SEGMENT_SIZE, maxWindowBytes);
+        }
+        else if(RENO.equals(aName))
+        {
+            return new RenoCongestionControl(this.MAX_SEGMENT_SIZE, maxWindowBytes);
+        }
+        
+        throw new IllegalArgumentException("Unknown congestion control: "+aName);
     }
     
     /**
@@ -387,5 +710,5 @@ public class Sender {
         // System exit.
         System.exit(0);
     }
-    
+
 }
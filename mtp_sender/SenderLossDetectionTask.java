@@ -0,0 +1,32 @@
+/**
+ * Class serves as the senders RACK loss detection check, run by the reorder timer when an in
+ * flight segment reaches its loss deadline without being delivered.
+ * @author Charbel Zeaiter
+ */
+public class SenderLossDetectionTask implements Runnable{
+    
+    // Class Fields /////////////////////////////////////////////////
+    private Sender mySender;
+    
+    // Class Constuctor /////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aSender Sender, A reference to the 'global' sender object to update/get values from.
+     */
+    public SenderLossDetectionTask(Sender aSender)
+    {
+        this.mySender = aSender;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Reorder timer thread.
+     */
+    public void run()
+    {
+        this.mySender.retransmitLost();
+    }
+    
+}
@@ -0,0 +1,55 @@
+/**
+ * Class serves as the senders tail loss probe (TLP), run by the probe timer when acks have stopped
+ * arriving for two round trips. The newest in flight segment is sent again so its ack (or SACK)
+ * lets RACK find any losses before it, instead of waiting for the retransmission timeout.
+ * @author Charbel Zeaiter
+ */
+public class SenderProbeTask implements Runnable{
+    
+    // Class Fields /////////////////////////////////////////////////
+    private Sender mySender;
+    
+    // Class Constuctor /////////////////////////////////////////////
+    
+    /**
+     * Class Constructor.
+     * @param aSender Sender, A reference to the 'global' sender object to update/get values from.
+     */
+    public SenderProbeTask(Sender aSender)
+    {
+        this.mySender = aSender;
+    }
+    
+    // Class Methods ////////////////////////////////////////////////
+    
+    /**
+     * Probe timer thread.
+     */
+    public void run()
+    {
+        // Lock thread.
+        this.mySender.myLock.lock();
+        
+        try
+        {
+            Triple lastSegment = this.mySender.mySendWindow.getLast();
+            
+            // Only probe outside fast recovery while the connection is open.
+            if( (lastSegment != null) && (!this.mySender.inRecovery) && (this.mySender.channelUDP.isOpen()) )
+            {
+                if(lastSegment.getStatus() != SegmentStatus.SACKED)
+                {
+                    this.mySender.retransmitSegment(lastSegment, EventLog.SENDER_TAIL_LOSS_PROBE);
+                }
+                
+                // One probe, then the retransmission timer from now.
+                this.mySender.armRetransmitTimer();
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
+        }
+    }
+    
+}
@@ -1,5 +1,4 @@
-import java.util.BitSet;
-import java.util.Timer;
+import java.nio.ByteBuffer;
 
 /**
  * This Class performs all the senderss 'receive' functions running within its own thread.
@@ -9,6 +8,8 @@ public class SenderReceive implements Runnable {
     
     // Class Fields /////////////////////////////////////////////////
     private Sender mySender;
+    private MTPHeader myReceivedMTPHeader;
+    private MTPSack mySack;
     
     // Class Constructor ////////////////////////////////////////////
     
@@ -19,6 +20,8 @@ public class SenderReceive implements Runnable {
     public SenderReceive(Sender aSender)
     {
         this.mySender = aSender;
+        this.myReceivedMTPHeader = new MTPHeader();
+        this.mySack = new MTPSack();
     }
     
     // Class Methods ////////////////////////////////////////////////
@@ -31,87 +34,59 @@ public class SenderReceive implements Runnable {
         while(this.mySender.connected)
         {
             // Listen for segments.
-            byte[] byteSegment = this.mySender.receiveMTPSegment();
+            ByteBuffer byteSegment = this.mySender.receiveMTPSegment();
             
-            // Extract header.
-            byte[] headerPart = this.mySender.myMTPCalculation.extractHeader(byteSegment, this.mySender.HEADER_BYTE_SIZE);
-            
-            // Convert header into BitSet to access bits.
-            BitSet receivedHeaderBits = this.mySender.myMTPCalculation.fromByteArray(headerPart);
-            MTPHeader receivedMTPHeader = new MTPHeader(receivedHeaderBits);
+            // Point the re-usable header view at the received segment.
+            MTPHeader receivedMTPHeader = this.myReceivedMTPHeader.wrap(byteSegment);
             
             // Check if ACK flag is set.
             if(receivedMTPHeader.getACK())
             {   
                 int ackValue = receivedMTPHeader.getAckNumber();
                 
-                if(ackValue > this.mySender.sendBase)
+                // Read any SACK blocks the ack carries.
+                ByteBuffer sackPayLoad = receivedMTPHeader.slicePayLoad();
+                this.mySack.decode(sackPayLoad);
+                
+                // Every ack advertises the receivers free buffer space.
+                this.mySender.receiverWindowBytes = this.mySender.getWindowBytes(receivedMTPHeader.getScaledMWS(this.mySender.peerWindowScale));
+                
+                if(this.mySender.myMTPCalculation.isSeqAfter(ackValue, this.mySender.sendBase))
                 {   
                     
-                    // Change status of all 'sent' segments to acked given the accumulated ack received.
+                    int ackedBytes = this.mySender.myMTPCalculation.getSeqDistance(this.mySender.sendBase, ackValue);
+                    
+                    // Change status of all 'sent' segments to acked given the accumulated ack received,
+                    // and move the send base up to it.
                     this.updateSegmentsToAcked(ackValue);
                     
-                    // Update new send base.
-                    this.mySender.sendBase = ackValue;
+                    // Grow the congestion window or move fast recovery on.
+                    this.updateRecovery(ackValue, ackedBytes);
                     
-                    // Start timer if again if un-acked segments exist.
-                    if(this.mySender.timerOn)
-                    {   
-                        this.mySender.timer.cancel();
-                        this.mySender.timerOn = false;
-                    }
+                    // Record what the receiver holds beyond the ack and retransmit the holes it shows.
+                    this.updateScoreboard();
+                    this.mySender.retransmitLost();
                     
-                    // Check if there are any un-acked segments left.
+                    // Start timer again if un-acked segments exist.
                     if(this.anyUnAcked())
                     {   
-                        // Create new timer.
-                        this.mySender.timer = new Timer();
-                        this.mySender.timer.schedule(new SenderTimeoutTask(this.mySender), this.mySender.TIMEOUT_VALUE);
-                        this.mySender.timerOn = true;
+                        // Re-arm the timer from now, with a tail loss probe ahead of it.
+                        this.mySender.armRetransmitTimer();
+                        this.mySender.armProbeTimer();
+                    }
+                    else
+                    {
+                        this.mySender.cancelRetransmitTimers();
                     }
                     
-                    // Lock thread.
-                    this.mySender.myLock.lock();
-                    
-                    try
-                    {                    
-                        // Output sender status/event to text log file.
-                        this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                        this.mySender.senderLogWriter.print("\nEVENT: RECEIVED ACK segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-                        this.mySender.senderLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                    +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                    +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                    +", Len="+receivedMTPHeader.getPayloadByteLength());
-                        this.mySender.senderLogWriter.print("\nPAYLOAD: NO DATA");
-                        this.mySender.senderLogWriter.flush();
+                    // Log sender status/event.
+                    this.mySender.myEventLog.logSegment(EventLog.SENDER_RECEIVED_ACK, 0, receivedMTPHeader, sackPayLoad);
                     
-                    } finally {
-                        // Unlock thread.
-                        this.mySender.myLock.unlock();
-                    }
+                    // The window has moved on.
+                    this.mySender.wakeSender();
                     
-                    // Check if the ack was for the last segment in the stream.
-                    if(ackValue >= this.mySender.lastSeqmentSeqNum)
-                    {   
-                        //If timer is on turn it off.
-                        if(this.mySender.timerOn)
-                        {
-                            this.mySender.timerOn = false;
-                            this.mySender.timer.cancel();
-                        }
-                        
-                        // Disconnect from receiver and close socket.
-                        this.mySender.connected = false;
-                        this.mySender.socketUDP.close();
-                        
-                        // Output sender status/event to text log file.
-                        this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                        this.mySender.senderLogWriter.print("\n>>> ALL FILES HAVE BEEN TRANSMITED!.....SOCKET CLOSED!");
-                        this.mySender.senderLogWriter.flush();
-                        
-                        // Exit program.
-                        System.exit(0);
-                    }
+                    // Check if the ack was for the end of the stream.
+                    this.mySender.checkTransferComplete();
                 }
                 else
                 {
@@ -122,23 +97,37 @@ public class SenderReceive implements Runnable {
                                         
                     try
                     { 
-                        // Output sender status/event to text log file.
-                        this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                        this.mySender.senderLogWriter.print("\nEVENT: RECEIVED DUPLICATE ACK segment of Seq: "+receivedMTPHeader.getSequenceNumber());
-                        this.mySender.senderLogWriter.print("\nHEADER: SYN="+receivedMTPHeader.getSYN()+", ACK="+receivedMTPHeader.getACK()+", SrcPort="+receivedMTPHeader.getSRCPort()
-                                                    +", DestPort="+receivedMTPHeader.getDestPort()+", SeqNum="+receivedMTPHeader.getSequenceNumber()
-                                                    +", AckNum="+receivedMTPHeader.getAckNumber()+", MSS="+receivedMTPHeader.getMSS()+", MWS="+receivedMTPHeader.getMWS()
-                                                    +", Len="+receivedMTPHeader.getPayloadByteLength());
-                        this.mySender.senderLogWriter.print("\nPAYLOAD: NO DATA");
-                        this.mySender.senderLogWriter.flush();
+                        this.mySender.myCongestionControl.onDuplicateAck();
+                        
+                        // Log sender status/event.
+                        this.mySender.myEventLog.logSegment(EventLog.SENDER_RECEIVED_DUPLICATE_ACK, 0, receivedMTPHeader, sackPayLoad);
                         
                     } finally {
                         // Unlock thread.
                         this.mySender.myLock.unlock();
                     }
                     
+                    // Record what the receiver holds beyond the ack and retransmit the holes it shows.
+                    this.updateScoreboard();
+                    
+                    // Fast recovery may have inflated the window.
+                    this.mySender.wakeSender();
+                    
+                    if(this.mySender.retransmitLost() > 0)
+                    {
+                        // The SACK blocks did the fast retransmit, reset control variables.
+                        this.mySender.duplicateAckCount = 0;
+                        this.mySender.firstDuplicateAck = false;
+                    }
+                    else if(this.isInRecovery())
+                    {
+                        // Duplicate acks in fast recovery only inflate the window, partial acks
+                        // retransmit the next hole.
+                        this.mySender.duplicateAckCount = 0;
+                        this.mySender.firstDuplicateAck = false;
+                    }
                     // If this is not a duplicate ack then set control varibales.
-                    if(!this.mySender.firstDuplicateAck)
+                    else if(!this.mySender.firstDuplicateAck)
                     {
                         this.mySender.firstDuplicateAck = true;
                         this.mySender.lastAck = receivedMTPHeader.getAckNumber();
@@ -161,40 +150,21 @@ public class SenderReceive implements Runnable {
                                 
                                 Triple newTriple = this.findSegWithSeq(currentlyReceivedAck);
                                 
-                                // Creating new MTP header.
-                                BitSet newMTPHeaderBitSet = new BitSet(this.mySender.HEADER_BIT_LENGTH);
-                                MTPHeader newMTPHeader = new MTPHeader(newMTPHeaderBitSet);
-                                
-                                // Setting header contents.
-                                newMTPHeader.setDestPort(this.mySender.RECEIVER_HOST_PORT);
-                                newMTPHeader.setSRCPort(this.mySender.SENDER_HOST_PORT);
-                                newMTPHeader.setSequenceNumber(newTriple.getSequenceNumber());
-                                newMTPHeader.setAckNumber(this.mySender.ackNumber);
-                                
-                                int payloadByteSize = newTriple.getDataSegment().length;
-                                newMTPHeader.setPayloadByteLength(payloadByteSize);
-                                
-                                // Lock thread.
-                                this.mySender.myLock.lock();
-                                
-                                try
+                                // The segment may already have been acked and released.
+                                if(newTriple != null)
                                 {
-                                    // Output sender status/event to text log file.
-                                    this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                                    this.mySender.senderLogWriter.print("\nEVENT: FAST RETRANSMIT ATTEMPT! Segment of Seq: "+newMTPHeader.getSequenceNumber());
-                                    this.mySender.senderLogWriter.print("\nHEADER: SYN="+newMTPHeader.getSYN()+", ACK="+newMTPHeader.getACK()+", SrcPort="+newMTPHeader.getSRCPort()
-                                                                +", DestPort="+newMTPHeader.getDestPort()+", SeqNum="+newMTPHeader.getSequenceNumber()
-                                                                +", AckNum="+newMTPHeader.getAckNumber()+", MSS="+newMTPHeader.getMSS()+", MWS="+newMTPHeader.getMWS()
-                                                                +", Len="+newMTPHeader.getPayloadByteLength());
-                                    this.mySender.senderLogWriter.print("\nPAYLOAD: "+new String(newTriple.getDataSegment()));
-                                    this.mySender.senderLogWriter.flush();
+                                    // Lock thread.
+                                    this.mySender.myLock.lock();
                                     
-                                    // Send Segment.
-                                    this.mySender.sendMTPSegment(newMTPHeaderBitSet, newTriple.getDataSegment(), true);
-                                
-                                } finally {
-                                    // Unlock thread.
-                                    this.mySender.myLock.unlock();
+                                    try
+                                    {
+                                        this.mySender.enterRecovery();
+                                        this.mySender.retransmitSegment(newTriple, EventLog.SENDER_FAST_RETRANSMIT);
+                                    
+                                    } finally {
+                                        // Unlock thread.
+                                        this.mySender.myLock.unlock();
+                                    }
                                 }
                                 
                                 // Reset control variables.
@@ -216,69 +186,168 @@ public class SenderReceive implements Runnable {
                 }
             
             }
+            
+            // The ack has been handled, the buffer can take the next one.
+            this.mySender.releaseMTPSegment(byteSegment);
         }
 
     }
     
     /**
-     * Finds the reference of the segment with the specified sequence number.
+     * Finds the reference of the in flight segment with the specified sequence number.
      * @param aSeqNum Integer, A sequence number.
-     * @return Triple, A holder of the segment data.
+     * @return Triple, A holder of the segment data, or null if it isn't in flight.
      */
     private Triple findSegWithSeq(int aSeqNum)
     {
-        Triple result = null;
+        // Lock thread.
+        this.mySender.myLock.lock();
         
-        // Loop through looking for match.
-        for(Triple element : this.mySender.dataSegmentStream)
+        try
         {
-            if(element.getSequenceNumber() == aSeqNum)
+            return this.mySender.mySendWindow.get(aSeqNum);
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Passes a new ack to the congestion control. In fast recovery an ack below the recovery
+     * point is partial: the next hole is retransmitted straight away (unless it already has been
+     * since recovery started) and recovery goes on. An ack of the recovery point ends it.
+     * @param aAckValue Integer, The cumulative ack number (already the send base).
+     * @param aAckedBytes Integer, The number of newly acked bytes.
+     */
+    private void updateRecovery(int aAckValue, int aAckedBytes)
+    {
+        // Lock thread.
+        this.mySender.myLock.lock();
+        
+        try
+        {
+            if(!this.mySender.inRecovery)
             {
-                result = element;
-                break;
+                this.mySender.myCongestionControl.onAck(aAckedBytes, this.mySender.myRTTEstimator.getSRTTMicros());
             }
+            else if(this.mySender.myMTPCalculation.isSeqBefore(aAckValue, this.mySender.recoveryPoint))
+            {
+                this.mySender.myCongestionControl.onPartialAck(aAckedBytes);
+                
+                Triple nextHole = this.mySender.mySendWindow.getFirst();
+                if( (nextHole != null) && (nextHole.getSendTime()-this.mySender.recoveryStartNanos < 0) && this.mySender.channelUDP.isOpen() )
+                {
+                    this.mySender.retransmitSegment(nextHole, EventLog.SENDER_PARTIAL_ACK_RETRANSMIT);
+                }
+            }
+            else
+            {
+                this.mySender.inRecovery = false;
+                this.mySender.myCongestionControl.onRecoveryComplete(this.mySender.getFlightBytes());
+            }
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
         }
-        
-        return result;
     }
     
     /**
-     * Checks if there are any un-acked segments in the segment stream.
+     * Checks if the sender is in fast recovery.
      * @return Boolean
      */
-    private boolean anyUnAcked()
+    private boolean isInRecovery()
     {
-        boolean result = false;
+        // Lock thread.
+        this.mySender.myLock.lock();
         
-        for(Triple element : this.mySender.dataSegmentStream)
+        try
         {
-            if(element.getStatus() == SegmentStatus.SENT)
+            return this.mySender.inRecovery;
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
+        }
+    }
+    
+    /**
+     * Marks the in flight segments covered by the last ack's SACK blocks 'SACKED'.
+     */
+    private void updateScoreboard()
+    {
+        if(this.mySack.getBlockCount() == 0)
+        {
+            return;
+        }
+        
+        // Lock thread.
+        this.mySender.myLock.lock();
+        
+        try
+        {
+            for(int i=0;i<this.mySack.getBlockCount();i++)
             {
-                result = true;
-                break;
+                this.mySender.mySendWindow.sack(this.mySack.getStart(i), this.mySack.getEnd(i));
             }
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
         }
+    }
+    
+    /**
+     * Checks if there are any un-acked segments in flight.
+     * @return Boolean
+     */
+    private boolean anyUnAcked()
+    {
+        // Lock thread.
+        this.mySender.myLock.lock();
         
-        return result;
+        try
+        {
+            return !this.mySender.mySendWindow.isEmpty();
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
+        }
     }
     
     /**
-     * Updates all segments in segment stream smaller than specified value to 'ACKED' status. 
+     * Marks all in flight segments below the specified value 'ACKED', releases them from
+     * the send window and moves the send base up to the ack in the same step.
      * @param aAckValue Integer, Ack Numeber.
      */
     private void updateSegmentsToAcked(int aAckValue)
     {
-        for(Triple element : this.mySender.dataSegmentStream)
-        {   
-            if(element.getStatus() == SegmentStatus.SENT)
+        // Lock thread.
+        this.mySender.myLock.lock();
+        
+        try
+        {
+            Triple lastAcked = this.mySender.mySendWindow.advance(aAckValue);
+            this.mySender.sendBase = aAckValue;
+            
+            if(lastAcked != null)
             {
-                if(element.getSequenceNumber() < aAckValue)
+                this.mySender.myRTTEstimator.resetBackOff();
+                
+                // Time the newest acked segment, unless it was retransmitted (Karn's rule).
+                if(!lastAcked.isRetransmitted())
                 {
-                    element.setStatus(SegmentStatus.ACKED);
+                    this.mySender.myRTTEstimator.addSample(lastAcked.getSendTime(), System.nanoTime());
                 }
             }
+            
+            
+        } finally {
+            // Unlock thread.
+            this.mySender.myLock.unlock();
         }
-        
     }
     
  
@@ -1,5 +1,5 @@
-import java.util.BitSet;
-import java.util.Timer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This Class is used to run the senders 'Send' algorithm within it own thread.
@@ -9,7 +9,12 @@ import java.util.Timer;
 public class SenderSend implements Runnable{
     
     // Class Fields /////////////////////////////////////////////////
+    
+    // Longest wait for the window to open before checking again (acks also wake the thread).
+    private static final long MAX_WINDOW_WAIT_NANOS = 10000000;
+    
     private Sender mySender;
+    private MTPHeader myMTPHeader;
     
     // Class Consturctor ////////////////////////////////////////////
     
@@ -20,6 +25,7 @@ public class SenderSend implements Runnable{
     public SenderSend(Sender aSender)
     {
         this.mySender = aSender;
+        this.myMTPHeader = new MTPHeader();
     }
     
     // Class Methods ////////////////////////////////////////////////
@@ -29,19 +35,12 @@ public class SenderSend implements Runnable{
      */
     public void run()
     {   
-        // Set up algorithm control values.
-        int index = 0;
-        int streamLength = this.mySender.dataSegmentStream.size();
-        this.mySender.sendBase = this.mySender.dataSegmentStream.get(index).getSequenceNumber();;
-        this.mySender.sequenceNumber = this.mySender.dataSegmentStream.get(index).getSequenceNumber();
-        int n = mySender.MAX_SEGMENT_SIZE*mySender.MAX_WINDOW_SIZE;
-        
         // Keep looping until all segments have been transmitted.
         boolean transmittedAll = false;
         while(!transmittedAll)
         {   
-            // Check if all segments have been transmitted.
-            if( (index >= streamLength) || (this.mySender.socketUDP.isClosed()))
+            // Check if the connection has been closed.
+            if(!this.mySender.channelUDP.isOpen())
             {
                 transmittedAll = true;
                 
@@ -49,12 +48,30 @@ public class SenderSend implements Runnable{
             else
             {   
                 
-                if(this.mySender.sequenceNumber< (this.mySender.sendBase+n) )
+                // The usable window, never below one segment so a closed receiver window is probed.
+                int n = Math.min(this.mySender.myCongestionControl.getCongestionWindow(), this.mySender.receiverWindowBytes);
+                n = Math.max(n, this.mySender.MAX_SEGMENT_SIZE);
+                
+                // Check the next segment is still inside the window (wrap safe).
+                if(this.mySender.myMTPCalculation.getSeqDistance(this.mySender.sendBase, this.mySender.sequenceNumber) < n)
                 {
+                    // Read the next segment from the input without the lock held, a pipe or standard
+                    // input may block until its producer writes more.
+                    Triple newTriple = this.mySender.mySegmentStream.getNextSegment();
+                    
+                    // Check if the input has ended.
+                    if(newTriple == null)
+                    {
+                        transmittedAll = true;
+                        
+                        // Nothing may be left in flight (e.g. an empty input).
+                        this.mySender.checkTransferComplete();
+                        continue;
+                    }
                     
-                    // Creating new MTP header.
-                    BitSet newMTPHeaderBitSet = new BitSet(this.mySender.HEADER_BIT_LENGTH);
-                    MTPHeader newMTPHeader = new MTPHeader(newMTPHeaderBitSet);
+                    // Re-using this threads MTP header.
+                    MTPHeader newMTPHeader = this.myMTPHeader;
+                    newMTPHeader.clear();
                     
                     // Setting header contents.
                     newMTPHeader.setDestPort(this.mySender.RECEIVER_HOST_PORT);
@@ -62,59 +79,63 @@ public class SenderSend implements Runnable{
                     newMTPHeader.setSequenceNumber(this.mySender.sequenceNumber);
                     newMTPHeader.setAckNumber(this.mySender.ackNumber);
                     
-                    byte[] bytePayLoad = this.mySender.dataSegmentStream.get(index).getDataSegment();
-                    int payloadByteSize = bytePayLoad.length;
+                    ByteBuffer payLoad = newTriple.getDataSegment();
+                    int payloadByteSize = payLoad.remaining();
                     newMTPHeader.setPayloadByteLength(payloadByteSize);
                     
+                    // Spread the segments over the round trip, each charged for the bytes it puts on the link.
+                    if(this.mySender.myPacer != null)
+                    {
+                        this.mySender.myPacer.pace(this.mySender.HEADER_BYTE_SIZE+payloadByteSize, this.mySender.myCongestionControl,
+                                                   this.mySender.myRTTEstimator.getSRTTMicros());
+                    }
+                    
                     // Lock thread.
                     this.mySender.myLock.lock();
                     
                     try{
                         
-                        if(!this.mySender.socketUDP.isClosed())
+                        if(this.mySender.channelUDP.isOpen())
                         {
-                           
-                            // Output sender status/event to text log file.
-                            this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                            this.mySender.senderLogWriter.print("\nEVENT: Attempting to Send Segment of Seq: "+newMTPHeader.getSequenceNumber());
-                            this.mySender.senderLogWriter.print("\nHEADER: SYN="+newMTPHeader.getSYN()+", ACK="+newMTPHeader.getACK()+", SrcPort="+newMTPHeader.getSRCPort()
-                                                        +", DestPort="+newMTPHeader.getDestPort()+", SeqNum="+newMTPHeader.getSequenceNumber()
-                                                        +", AckNum="+newMTPHeader.getAckNumber()+", MSS="+newMTPHeader.getMSS()+", MWS="+newMTPHeader.getMWS()
-                                                        +", Len="+newMTPHeader.getPayloadByteLength());
-                            this.mySender.senderLogWriter.print("\nPAYLOAD: "+new String(bytePayLoad));
-                            this.mySender.senderLogWriter.flush();
+                            // Put the segment in flight as it is sent, so no timer or RACK pass can
+                            // retransmit a segment that was never sent, and move the sequence number
+                            // past it in the same step so the flight size never runs behind the send base.
+                            boolean windowWasEmpty = (this.mySender.sendBase == this.mySender.sequenceNumber);
+                            newTriple.setStatus(SegmentStatus.SENT);
+                            newTriple.setSendTime(System.nanoTime(), false);
+                            this.mySender.mySendWindow.add(newTriple);
+                            
+                            // Log sender status/event.
+                            this.mySender.myEventLog.logData(EventLog.SENDER_SENT_SEGMENT, newMTPHeader, payLoad);
                             
                             // Send Segment.
-                            this.mySender.sendMTPSegment(newMTPHeaderBitSet, bytePayLoad, true);
+                            this.mySender.sendMTPSegment(newMTPHeader, payLoad, true);
+                            
+                            this.mySender.sequenceNumber = this.mySender.mySegmentStream.getNextSeqNum();
+                            
+                            if(windowWasEmpty)
+                            {
+                                // Start Timer.
+                                this.mySender.armRetransmitTimer();
+                                this.mySender.armProbeTimer();
+                            }
                         }
                         
                     } finally {
                         // Unlock thread.
                         this.mySender.myLock.unlock();
                     }
-                        
-                    // Change Status of Segment in stream.
-                    this.mySender.dataSegmentStream.get(index).setStatus(SegmentStatus.SENT);
-                    
-                    if(this.mySender.sendBase == this.mySender.sequenceNumber)
-                    {
-                        // Start Timer. 
-                        this.mySender.timer = new Timer();
-                        this.mySender.timer.schedule(new SenderTimeoutTask(this.mySender), this.mySender.TIMEOUT_VALUE);
-                        this.mySender.timerOn = true;
-                    }
-                    
-                    index++;
-                    if(index < streamLength)
-                    {
-                        this.mySender.sequenceNumber = this.mySender.dataSegmentStream.get(index).getSequenceNumber(); 
-                    }
                     
                 }
+                else
+                {
+                    // The window is full, wait for an ack to open it.
+                    LockSupport.parkNanos(this, MAX_WINDOW_WAIT_NANOS);
+                }
             }
         }
         
-    
+        
     }
-    
+
 }
@@ -1,12 +1,8 @@
-import java.util.BitSet;
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
- * Class serves as the timeout for the MTP sender.
+ * Class serves as the timeout for the MTP sender, run by the senders retransmission timer.
  * @author Charbel Zeaiter
  */
-public class SenderTimeoutTask extends TimerTask{
+public class SenderTimeoutTask implements Runnable{
     
     // Class Fields /////////////////////////////////////////////////
     private Sender mySender;
@@ -20,7 +16,6 @@ public class SenderTimeoutTask extends TimerTask{
     public SenderTimeoutTask(Sender aSender)
     {
         this.mySender = aSender;
-        this.mySender.timerOn = false;
     }
     
     // Class Methods ////////////////////////////////////////////////
@@ -38,38 +33,18 @@ public class SenderTimeoutTask extends TimerTask{
             Triple minSegment = this.findMinSeqSeg();
             
             // If a min segment exists and connection hasnt been closed.
-            if( (minSegment != null) && (!this.mySender.socketUDP.isClosed()) )
+            if( (minSegment != null) && (this.mySender.channelUDP.isOpen()) )
             {
-                // Creating new MTP header.
-                BitSet newMTPHeaderBitSet = new BitSet(this.mySender.HEADER_BIT_LENGTH);
-                MTPHeader newMTPHeader = new MTPHeader(newMTPHeaderBitSet);
-                
-                // Setting header contents.
-                newMTPHeader.setDestPort(this.mySender.RECEIVER_HOST_PORT);
-                newMTPHeader.setSRCPort(this.mySender.SENDER_HOST_PORT);
-                newMTPHeader.setSequenceNumber(minSegment.getSequenceNumber());
-                newMTPHeader.setAckNumber(this.mySender.ackNumber);
-                
-                int payloadByteSize = minSegment.getDataSegment().length;
-                newMTPHeader.setPayloadByteLength(payloadByteSize);
-                
-                // Output sender status/event to text log file.
-                this.mySender.senderLogWriter.print("\n\nTIME: "+this.mySender.getCurrentSeconds()+"ms");
-                this.mySender.senderLogWriter.print("\nEVENT: TIMEOUT! Attempting to Send Segment of Seq: "+newMTPHeader.getSequenceNumber());
-                this.mySender.senderLogWriter.print("\nHEADER: SYN="+newMTPHeader.getSYN()+", ACK="+newMTPHeader.getACK()+", SrcPort="+newMTPHeader.getSRCPort()
-                                            +", DestPort="+newMTPHeader.getDestPort()+", SeqNum="+newMTPHeader.getSequenceNumber()
-                                            +", AckNum="+newMTPHeader.getAckNumber()+", MSS="+newMTPHeader.getMSS()+", MWS="+newMTPHeader.getMWS()
-                                            +", Len="+newMTPHeader.getPayloadByteLength());
-                this.mySender.senderLogWriter.print("\nPAYLOAD: "+new String(minSegment.getDataSegment()));
-                this.mySender.senderLogWriter.flush();
+                // Collapse the congestion window, a timeout ends any fast recovery.
+                this.mySender.inRecovery = false;
+                this.mySender.myCongestionControl.onTimeout(this.mySender.getFlightBytes());
                 
                 // Send Segment.
-                this.mySender.sendMTPSegment(newMTPHeaderBitSet, minSegment.getDataSegment(), true);
+                this.mySender.retransmitSegment(minSegment, EventLog.SENDER_TIMEOUT);
                 
-                // Start Timer.
-                this.mySender.timer = new Timer();
-                this.mySender.timer.schedule(new SenderTimeoutTask(this.mySender), this.mySender.TIMEOUT_VALUE);
-                this.mySender.timerOn = true;
+                // Back off and start Timer.
+                this.mySender.myRTTEstimator.backOff();
+                this.mySender.armRetransmitTimer();
                 
             }
             
@@ -82,22 +57,11 @@ public class SenderTimeoutTask extends TimerTask{
     
     /**
      * Gets the smallest un-acked sequence number.
-     * @return Triple, A reference to the segment in the segment holder  stream. 
+     * @return Triple, A reference to the segment at the start of the send window. 
      */
     private Triple findMinSeqSeg()
     {
-        Triple result = null;
-        
-        for(Triple element : this.mySender.dataSegmentStream)
-        {
-            if(element.getStatus() == SegmentStatus.SENT)
-            {
-                result = element;
-                break;
-            }
-        }
-        
-        return result;
+        return this.mySender.mySendWindow.getFirst();
     }
     
 }
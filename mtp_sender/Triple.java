@@ -1,27 +1,32 @@
+import java.nio.ByteBuffer;
 
 /**
- * Class is used as a holder/collector for entries in the segment stream.
+ * Class is used as a holder/collector for segments handed out by the segment stream, it is kept
+ * while the segment is in flight and dropped once the segment is cumulatively acknowledged.
  * @author Charbel Zeaiter.
  */
 public class Triple {
     
     // Class Fields /////////////////////////////////////////////////
     private int sequenceNumber;
-    private byte[] dataSegment;
+    private ByteBuffer dataSegment;
     private SegmentStatus status;
+    private long sendTimeNanos;
+    private boolean retransmitted;
     
     // Class Constructor ////////////////////////////////////////////
     
     /**
      * Class Constructor.
      * @param aSequenceNumber Integer, A sequence number.
-     * @param aDataSegment byte[], A byte array of data.
+     * @param aDataSegment ByteBuffer, The data (between position and limit).
      */
-    public Triple(int aSequenceNumber, byte[] aDataSegment)
+    public Triple(int aSequenceNumber, ByteBuffer aDataSegment)
     {
         this.sequenceNumber = aSequenceNumber;
         this.dataSegment = aDataSegment;
         this.status = SegmentStatus.USABLE;
+        this.retransmitted = false;
     }
     
     /**
@@ -43,14 +48,53 @@ public class Triple {
     }
     
     /**
-     * Gets the holders data/payload.
-     * @return byte[]
+     * Gets the holders data/payload. The buffer is shared by every (re)send of the segment, so
+     * its position and limit must be left unchanged.
+     * @return ByteBuffer
      */
-    public byte[] getDataSegment()
+    public ByteBuffer getDataSegment()
     {
         return this.dataSegment;
     }
     
+    /**
+     * Gets the number of data/payload bytes.
+     * @return Integer
+     */
+    public int getDataLength()
+    {
+        return this.dataSegment.remaining();
+    }
+    
+    /**
+     * Gets the time the segment was last (re)sent.
+     * @return Long, A System.nanoTime() value.
+     */
+    public long getSendTime()
+    {
+        return this.sendTimeNanos;
+    }
+    
+    /**
+     * Records a (re)send of the segment.
+     * @param aSendTimeNanos Long, A System.nanoTime() value.
+     * @param isRetransmission Boolean, If the segment had been sent before.
+     */
+    public void setSendTime(long aSendTimeNanos, boolean isRetransmission)
+    {
+        this.sendTimeNanos = aSendTimeNanos;
+        this.retransmitted = this.retransmitted || isRetransmission;
+    }
+    
+    /**
+     * Checks if the segment has ever been retransmitted, its ack then can't be timed.
+     * @return Boolean
+     */
+    public boolean isRetransmitted()
+    {
+        return this.retransmitted;
+    }
+    
     /**
      * Gets the status of the holder.
      * @return SegmentStatus
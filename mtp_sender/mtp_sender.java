@@ -7,7 +7,7 @@ public class mtp_sender {
     
     public static void main(String[] args)
     {   
-        if(args.length == 8)
+        if( (args.length >= 8) && (args.length <= 11) )
         {
             // Extract parameters from terminal arguments.
             String receiverHostIP = args[0];
@@ -18,11 +18,47 @@ public class mtp_sender {
             int timeoutValue = Integer.parseInt(args[5]);
             float probOfDrop = Float.parseFloat(args[6]);
             int seedValue = Integer.parseInt(args[7]);
+            String congestionControl = (args.length >= 9) ? args[8] : Sender.RENO;
+            String pacing = (args.length >= 10) ? args[9] : "off";
+            int logCaptureBytes = (args.length == 11) ? Integer.parseInt(args[10]) : EventLog.NO_PAYLOAD_CAPTURE;
+            
+            if( !Sender.RENO.equals(congestionControl) && !Sender.CUBIC.equals(congestionControl) )
+            {
+                // Exit program.
+                System.out.println("Congestion control must be 'reno' or 'cubic'");
+                System.exit(0);
+            }
+            
+            // Pacing is 'off', 'auto' (from the congestion window) or a rate in bytes per second.
+            long pacingRate = Sender.PACING_OFF;
+            if(pacing.equals("auto"))
+            {
+                pacingRate = Pacer.AUTO_RATE;
+            }
+            else if(!pacing.equals("off"))
+            {
+                pacingRate = Long.parseLong(pacing);
+                
+                if(pacingRate <= 0)
+                {
+                    // Exit program.
+                    System.out.println("Pacing must be 'off', 'auto' or a rate in bytes per second");
+                    System.exit(0);
+                }
+            }
+            
+            if( (logCaptureBytes < 0) || (logCaptureBytes > EventLog.MAX_CAPTURE_BYTE_SIZE) )
+            {
+                // Exit program.
+                System.out.println("Log capture must be between 0 and "+EventLog.MAX_CAPTURE_BYTE_SIZE+" bytes");
+                System.exit(0);
+            }
             
             // Launch sender. 
             Sender newSender = new Sender(receiverHostIP, receiverPort, filename, 
                                           maxWindowSize, maxSegmentSize, timeoutValue,
-                                          probOfDrop, seedValue);
+                                          probOfDrop, seedValue, congestionControl, pacingRate,
+                                          logCaptureBytes, Sender.LOG_FILENAME);
             // Execute sender modes.
             newSender.handShake();
             newSender.exchange();